@@ -0,0 +1,24 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// the response to a POST stored by its Idempotency-Key, removed by a TTL index on createdAt
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class IdempotencyRecord {
+
+    @Id
+    private String key;
+    private String fingerprint;
+    // the response as written by the mongo converter, null while the write that claimed the key is running
+    private org.bson.Document response;
+    private Instant createdAt;
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    private String message;
+    public IdempotencyKeyInProgressException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
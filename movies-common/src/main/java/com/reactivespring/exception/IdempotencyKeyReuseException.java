@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class IdempotencyKeyReuseException extends RuntimeException {
+    private String message;
+    public IdempotencyKeyReuseException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class IdempotencyStoreFullException extends RuntimeException {
+    private String message;
+    public IdempotencyStoreFullException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
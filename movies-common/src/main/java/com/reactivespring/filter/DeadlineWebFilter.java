@@ -0,0 +1,64 @@
+package com.reactivespring.filter;
+
+import com.reactivespring.util.Deadline;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Starts the deadline of a request from the route budget, or from the remaining time sent by the caller
+ * when that is shorter, and puts it into the Reactor context for the rest of the request.
+ * Requests matching no route and sent without a deadline run unbounded.
+ */
+public class DeadlineWebFilter implements WebFilter {
+
+    private Duration max;
+    private Map<PathPattern, Duration> routes = new LinkedHashMap<>();
+
+    public DeadlineWebFilter(Duration max) {
+        this(max, Map.of());
+    }
+
+    // path pattern -> end-to-end budget, the first matching pattern wins and 0 means no deadline
+    public DeadlineWebFilter(Duration max, Map<String, Duration> routes) {
+        this.max = max;
+        routes.forEach((pattern, budget) ->
+                this.routes.put(PathPatternParser.defaultInstance.parse(pattern), budget));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return budget(exchange.getRequest())
+                .map(Deadline::after)
+                .map(deadline -> chain.filter(exchange).contextWrite(deadline::addTo))
+                .orElseGet(() -> chain.filter(exchange));
+    }
+
+    private Optional<Duration> budget(ServerHttpRequest request) {
+        var path = request.getPath().pathWithinApplication();
+        var routeBudget = routes.entrySet().stream()
+                .filter(route -> route.getKey().matches(path))
+                .map(Map.Entry::getValue)
+                .findFirst();
+        // long-lived streams have no deadline, whatever the caller sent
+        if (routeBudget.isPresent() && routeBudget.get().isZero()) {
+            return Optional.empty();
+        }
+        var callerBudget = Deadline.parseHeader(request.getHeaders().getFirst(Deadline.HEADER))
+                .map(remaining -> remaining.compareTo(max) > 0 ? max : remaining);
+        if (routeBudget.isPresent() && callerBudget.isPresent()) {
+            return Optional.of(routeBudget.get().compareTo(callerBudget.get()) < 0
+                    ? routeBudget.get() : callerBudget.get());
+        }
+        return routeBudget.isPresent() ? routeBudget : callerBudget;
+    }
+}
@@ -0,0 +1,121 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.IdempotencyRecord;
+import com.reactivespring.util.IdempotencyStore;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps Idempotency-Keys in a TTL collection, so they outlive a restart and are shared by every instance.
+ * A key is claimed by inserting its record before the write, the unique _id lets only one instance win it.
+ * A claim whose write never completed, because its instance died, is taken over after pendingTimeout.
+ */
+@Slf4j
+public class MongoIdempotencyPersistence<V> implements IdempotencyStore.Persistence<V> {
+
+    private static final String TTL_INDEX = "createdAt_ttl";
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private Class<V> responseType;
+    private Duration ttl;
+    private Duration pendingTimeout;
+
+    public MongoIdempotencyPersistence(ReactiveMongoTemplate reactiveMongoTemplate, Class<V> responseType,
+                                       Duration ttl, Duration pendingTimeout) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.responseType = responseType;
+        this.ttl = ttl;
+        this.pendingTimeout = pendingTimeout;
+    }
+
+    @Override
+    public Mono<IdempotencyStore.Stored<V>> claim(String key, String fingerprint) {
+        var now = Instant.now();
+        return reactiveMongoTemplate.insert(new IdempotencyRecord(key, fingerprint, null, now))
+                .then(Mono.<IdempotencyStore.Stored<V>>empty())
+                .onErrorResume(DuplicateKeyException.class, e -> takeOver(key, fingerprint, now)
+                        .flatMap(takenOver -> takenOver
+                                ? Mono.<IdempotencyStore.Stored<V>>empty()
+                                : reactiveMongoTemplate.findById(key, IdempotencyRecord.class)
+                                        .map(this::toStored)
+                                        // released in between, claim it again
+                                        .switchIfEmpty(Mono.defer(() -> claim(key, fingerprint)))));
+    }
+
+    @Override
+    public Mono<IdempotencyStore.Stored<V>> find(String key) {
+        return reactiveMongoTemplate.findById(key, IdempotencyRecord.class)
+                // the TTL monitor only runs once a minute
+                .filter(record -> record.getCreatedAt().plus(ttl).isAfter(Instant.now()))
+                .map(this::toStored);
+    }
+
+    @Override
+    public Mono<Void> complete(String key, V response) {
+        return reactiveMongoTemplate.updateFirst(query(where("key").is(key)),
+                        new Update().set("response", reactiveMongoTemplate.getConverter().convertToMongoType(response)),
+                        IdempotencyRecord.class)
+                .then();
+    }
+
+    // only a claim still waiting for its response, a completed one is kept
+    @Override
+    public Mono<Void> release(String key) {
+        return reactiveMongoTemplate.remove(query(where("key").is(key).and("response").is(null)), IdempotencyRecord.class)
+                .then();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createTtlIndex() {
+        reactiveMongoTemplate.indexOps(IdempotencyRecord.class)
+                .ensureIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(ttl).named(TTL_INDEX))
+                // a changed ttl conflicts with the existing index, collMod changes it in place
+                .onErrorResume(MongoIndexInitializer::isIndexConflict, e -> updateTtl())
+                .retryWhen(MongoIndexInitializer.retryWhileUnreachable("TTL index creation"))
+                .subscribe(index -> log.info("Index ensured : {}", index),
+                        e -> log.error("TTL index creation gave up, idempotency keys do not expire : {}", e.getMessage()));
+    }
+
+    // a record past its ttl the TTL monitor has not removed yet, or a claim whose write never completed
+    private Mono<Boolean> takeOver(String key, String fingerprint, Instant now) {
+        var abandoned = query(where("key").is(key).orOperator(
+                where("createdAt").lt(now.minus(ttl)),
+                new Criteria().andOperator(where("response").is(null), where("createdAt").lt(now.minus(pendingTimeout)))));
+        var claim = new Update()
+                .set("fingerprint", fingerprint)
+                .set("createdAt", now)
+                .unset("response");
+        return reactiveMongoTemplate.updateFirst(abandoned, claim, IdempotencyRecord.class)
+                .map(result -> result.getModifiedCount() > 0);
+    }
+
+    private IdempotencyStore.Stored<V> toStored(IdempotencyRecord record) {
+        var response = record.getResponse() == null
+                ? null
+                : reactiveMongoTemplate.getConverter().read(responseType, record.getResponse());
+        return new IdempotencyStore.Stored<>(record.getFingerprint(), response);
+    }
+
+    private Mono<String> updateTtl() {
+        var collMod = new Document("collMod", reactiveMongoTemplate.getCollectionName(IdempotencyRecord.class))
+                .append("index", new Document("name", TTL_INDEX).append("expireAfterSeconds", ttl.getSeconds()));
+        return reactiveMongoTemplate.executeCommand(collMod)
+                .doOnNext(result -> log.info("TTL of {} changed to {}", TTL_INDEX, ttl))
+                .thenReturn(TTL_INDEX);
+    }
+}
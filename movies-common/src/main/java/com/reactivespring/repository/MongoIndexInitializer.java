@@ -0,0 +1,120 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the indexes declared with @Indexed / @CompoundIndex on the given documents.
+ * createIndex is a no-op for an index that already exists with the same definition, so this runs on every startup.
+ * An index that exists with another definition is a conflict that no retry resolves: it is logged as an error
+ * and the other indexes are still created. Indexes a document no longer declares are listed as superseded and
+ * dropped once its declared indexes exist, so its queries are never left without one.
+ */
+@Slf4j
+public class MongoIndexInitializer {
+
+    // IndexOptionsConflict and IndexKeySpecsConflict
+    private static final List<Integer> INDEX_CONFLICT_CODES = List.of(85, 86);
+    private static final int INDEX_NOT_FOUND = 27;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private List<Class<?>> documents;
+    private Map<Class<?>, List<String>> supersededIndexes;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate, List<Class<?>> documents) {
+        this(reactiveMongoTemplate, documents, Map.of());
+    }
+
+    // document -> names of the indexes it used to declare
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate, List<Class<?>> documents,
+                                 Map<Class<?>, List<String>> supersededIndexes) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.documents = documents;
+        this.supersededIndexes = supersededIndexes;
+    }
+
+    // fails after every index was tried if any of them could not be created
+    public Flux<String> ensureIndexes() {
+        var indexResolver = new MongoPersistentEntityIndexResolver(reactiveMongoTemplate.getConverter().getMappingContext());
+        return Flux.fromIterable(documents)
+                .concatMapDelayError(document -> Flux.fromIterable(indexResolver.resolveIndexFor(document))
+                        .concatMapDelayError(indexDefinition -> reactiveMongoTemplate.indexOps(document)
+                                .ensureIndex(indexDefinition)
+                                .doOnError(e -> !isUnreachable(e), e -> log.error(
+                                        "Index {} on {} cannot be created, drop or migrate the existing index : {}",
+                                        indexDefinition.getIndexKeys(), document.getSimpleName(), e.getMessage())))
+                        .concatWith(dropSuperseded(document)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        // the service starts without mongo as well, so keep trying in the background instead of failing the startup
+        ensureIndexes()
+                .retryWhen(retryWhileUnreachable("Index creation"))
+                .subscribe(index -> log.info("Index ensured : {}", index),
+                        e -> log.error("Index creation gave up, queries relying on the missing indexes scan their collection"));
+    }
+
+    // an index that is already gone is fine, it was dropped on an earlier startup
+    private Flux<String> dropSuperseded(Class<?> document) {
+        return Flux.fromIterable(supersededIndexes.getOrDefault(document, List.of()))
+                .concatMap(indexName -> reactiveMongoTemplate.indexOps(document)
+                        .dropIndex(indexName)
+                        .doOnSuccess(dropped -> log.info("Superseded index {} on {} dropped", indexName,
+                                document.getSimpleName()))
+                        .onErrorResume(MongoIndexInitializer::isIndexNotFound, e -> Mono.empty())
+                        .then(Mono.<String>empty()));
+    }
+
+    // only a mongo that cannot be reached is worth waiting for, anything else fails the same way on every attempt
+    public static RetryBackoffSpec retryWhileUnreachable(String operation) {
+        return Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofSeconds(30))
+                .filter(MongoIndexInitializer::isUnreachable)
+                .doBeforeRetry(retrySignal -> log.warn("{} failed, retrying : {}", operation,
+                        retrySignal.failure().getMessage()));
+    }
+
+    public static boolean isIndexConflict(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException
+                    && INDEX_CONFLICT_CODES.contains(((MongoCommandException) cause).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIndexNotFound(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException
+                    && ((MongoCommandException) cause).getErrorCode() == INDEX_NOT_FOUND) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUnreachable(Throwable e) {
+        return Exceptions.unwrapMultiple(e).stream()
+                .allMatch(failure -> failure instanceof DataAccessResourceFailureException
+                        || failure instanceof MongoSocketException
+                        || failure instanceof MongoTimeoutException);
+    }
+}
@@ -0,0 +1,136 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Point in time after which nobody is waiting for the result of a request any more.
+ * It travels in the Reactor context, and between services as the remaining milliseconds in {@link #HEADER}.
+ */
+public class Deadline {
+
+    public static final String HEADER = "X-Deadline-Remaining-Ms";
+
+    private static final Object CONTEXT_KEY = Deadline.class;
+
+    // only moves for a copy shared between callers, see extendTo
+    private volatile long expiresAt;
+    private final LongSupplier nanoTime;
+
+    Deadline(Duration budget, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.expiresAt = nanoTime.getAsLong() + budget.toNanos();
+    }
+
+    private Deadline(long expiresAt, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.expiresAt = expiresAt;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(budget, System::nanoTime);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAt - nanoTime.getAsLong()));
+    }
+
+    public boolean isExpired() {
+        return expiresAt - nanoTime.getAsLong() <= 0;
+    }
+
+    public boolean isLaterThan(Deadline other) {
+        return expiresAt - other.expiresAt > 0;
+    }
+
+    // for work shared between callers, so extending it leaves the deadline of the caller untouched
+    public Deadline copy() {
+        return new Deadline(expiresAt, nanoTime);
+    }
+
+    /**
+     * Moves a deadline shared between callers to the later one of a caller joining. A deadline that already
+     * passed is not extended, the work under it is failing, so false tells the caller to start its own.
+     */
+    public synchronized boolean extendTo(Deadline other) {
+        if (isExpired()) {
+            return false;
+        }
+        if (other.isLaterThan(this)) {
+            expiresAt = other.expiresAt;
+        }
+        return true;
+    }
+
+    public Context addTo(Context context) {
+        return context.put(CONTEXT_KEY, this);
+    }
+
+    public static Optional<Deadline> from(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    // a missing, malformed or negative header means the caller did not set a deadline
+    public static Optional<Duration> parseHeader(String headerValue) {
+        if (headerValue == null) {
+            return Optional.empty();
+        }
+        try {
+            var remainingMillis = Long.parseLong(headerValue.trim());
+            return remainingMillis < 0 ? Optional.empty() : Optional.of(Duration.ofMillis(remainingMillis));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static Counter exceededCounter(String stage, MeterRegistry meterRegistry) {
+        return Counter.builder("deadline.exceeded")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cancels {@code source} once the deadline in the subscriber context has passed and fails with
+     * {@link DeadlineExceededException}. Without a deadline in the context the source is returned as is.
+     */
+    public static <T> Mono<T> enforce(Mono<T> source, String stage, Counter exceededCounter) {
+        return Mono.deferContextual(context -> from(context)
+                .map(deadline -> deadline.isExpired()
+                        ? Mono.<T>error(() -> exceeded(stage))
+                        : source.timeout(deadline.expiry(), Mono.error(() -> exceeded(stage))))
+                .orElse(source))
+                .doOnError(DeadlineExceededException.class, e -> exceededCounter.increment());
+    }
+
+    public static <T> Flux<T> enforce(Flux<T> source, String stage, Counter exceededCounter) {
+        return Flux.deferContextual(context -> from(context)
+                .map(deadline -> deadline.isExpired()
+                        ? Flux.<T>error(() -> exceeded(stage))
+                        // Flux#timeout(Duration) is per element, every element re-arms with what is left of the deadline
+                        : source.timeout(deadline.expiry(),
+                                element -> deadline.expiry(),
+                                Flux.error(() -> exceeded(stage))))
+                .orElse(source))
+                .doOnError(DeadlineExceededException.class, e -> exceededCounter.increment());
+    }
+
+    // emits once the deadline has passed, later than first planned when a shared deadline was extended meanwhile
+    public Mono<Long> expiry() {
+        return Mono.defer(() -> Mono.delay(remaining()))
+                .filter(tick -> isExpired())
+                .repeatWhenEmpty(repeats -> repeats);
+    }
+
+    public static DeadlineExceededException exceeded(String stage) {
+        return new DeadlineExceededException("Deadline exceeded in " + stage);
+    }
+}
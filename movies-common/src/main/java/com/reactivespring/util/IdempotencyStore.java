@@ -0,0 +1,310 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.IdempotencyKeyInProgressException;
+import com.reactivespring.exception.IdempotencyKeyReuseException;
+import com.reactivespring.exception.IdempotencyStoreFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response to a write by its Idempotency-Key for ttl, so a retried write gets the stored response
+ * instead of being executed again. Writes arriving while the first one with their key is still running wait for it
+ * and get its response. At most maxKeys keys are kept in memory, the oldest completed ones are forgotten first; with
+ * a {@link Persistence} they are still found there. A key whose write is still running is never forgotten, so when
+ * all maxKeys are in flight a new key is rejected instead. With a {@link Persistence} the key is claimed there before
+ * the write, so another instance sent the same key waits for that response for up to pendingTimeout instead of
+ * writing again. Failed writes are not remembered, a retry executes them again.
+ */
+@Slf4j
+public class IdempotencyStore<V> {
+
+    public static final String HEADER = "Idempotency-Key";
+    // true on a response that was stored for an earlier request with the same key
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    public interface Persistence<V> {
+        // empty when the caller claimed the key, otherwise the existing record, without a response while pending
+        Mono<Stored<V>> claim(String key, String fingerprint);
+
+        Mono<Stored<V>> find(String key);
+
+        Mono<Void> complete(String key, V response);
+
+        // gives up a claim whose write failed, so a retry can claim the key again
+        Mono<Void> release(String key);
+    }
+
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>();
+    private final int maxKeys;
+    private final long ttlNanos;
+    private final Duration pendingTimeout;
+    private final Persistence<V> persistence;
+    private final LongSupplier nanoTime;
+
+    private final Counter executedCounter;
+    private final Counter replayedCounter;
+    private final Counter joinedCounter;
+
+    public IdempotencyStore(String name, int maxKeys, Duration ttl, Duration pendingTimeout,
+                            Persistence<V> persistence, MeterRegistry meterRegistry) {
+        this(name, maxKeys, ttl, pendingTimeout, persistence, meterRegistry, System::nanoTime);
+    }
+
+    IdempotencyStore(String name, int maxKeys, Duration ttl, Duration pendingTimeout,
+                     Persistence<V> persistence, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.maxKeys = maxKeys;
+        this.ttlNanos = ttl.toNanos();
+        this.pendingTimeout = pendingTimeout;
+        this.persistence = persistence;
+        this.nanoTime = nanoTime;
+        this.executedCounter = requestCounter(name, "executed", meterRegistry);
+        this.replayedCounter = requestCounter(name, "replayed", meterRegistry);
+        this.joinedCounter = requestCounter(name, "joined", meterRegistry);
+        Gauge.builder("idempotency.keys", this, IdempotencyStore::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    // fingerprint identifies the request body, the same key sent with a different body is rejected
+    public Mono<Result<V>> execute(String key, String fingerprint, Supplier<Mono<V>> write) {
+        return Mono.deferContextual(context -> {
+            Entry<V> entry;
+            boolean first;
+            synchronized (this) {
+                entry = getIfPresent(key);
+                first = entry == null;
+                if (first) {
+                    entry = new Entry<>(fingerprint, nanoTime.getAsLong());
+                    if (!put(key, entry)) {
+                        return Mono.error(new IdempotencyStoreFullException(
+                                "All " + maxKeys + " " + HEADER + "s are in flight, retry later"));
+                    }
+                }
+            }
+            if (first) {
+                respond(key, entry, write, context);
+                return entry.response.asMono();
+            }
+            if (!entry.fingerprint.equals(fingerprint)) {
+                return Mono.error(reused(key));
+            }
+            (entry.completed ? replayedCounter : joinedCounter).increment();
+            return entry.response.asMono().map(Result::asReplayed);
+        });
+    }
+
+    // of the fields of a request body that make it the same request
+    public static String fingerprint(Object... fields) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest(Arrays.deepToString(fields).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // subscribed on its own, so the write runs once and to the end even if the request that started it goes away
+    private void respond(String key, Entry<V> entry, Supplier<Mono<V>> write, ContextView context) {
+        claim(key, entry, write)
+                .doOnSuccess(result -> {
+                    if (result == null) {
+                        remove(key, entry);
+                    } else {
+                        entry.completed = true;
+                    }
+                })
+                .doOnError(e -> remove(key, entry))
+                .contextWrite(Context.of(context))
+                .subscribe(entry.response::tryEmitValue, entry.response::tryEmitError, entry.response::tryEmitEmpty);
+    }
+
+    private Mono<Result<V>> claim(String key, Entry<V> entry, Supplier<Mono<V>> write) {
+        if (persistence == null) {
+            return writeAndComplete(key, write);
+        }
+        return persistence.claim(key, entry.fingerprint)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorResume(e -> {
+                    log.warn("Idempotency key could not be claimed, executing the request : {}", e.getMessage());
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(existing -> existing.isPresent()
+                        ? replayOrAwait(key, entry, existing.get(), write)
+                        : writeAndComplete(key, write));
+    }
+
+    private Mono<Result<V>> writeAndComplete(String key, Supplier<Mono<V>> write) {
+        return Mono.defer(() -> {
+            executedCounter.increment();
+            return write.get()
+                    .onErrorResume(e -> release(key).then(Mono.error(e)))
+                    .flatMap(response -> complete(key, response)
+                            .thenReturn(new Result<>(response, false)));
+        });
+    }
+
+    // the key was claimed by another instance, or by this one before a restart
+    private Mono<Result<V>> replayOrAwait(String key, Entry<V> entry, Stored<V> stored, Supplier<Mono<V>> write) {
+        if (!stored.getFingerprint().equals(entry.fingerprint)) {
+            return Mono.error(reused(key));
+        }
+        if (stored.getResponse() != null) {
+            replayedCounter.increment();
+            return Mono.just(new Result<>(stored.getResponse(), true));
+        }
+        joinedCounter.increment();
+        return persistence.find(key)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                // until the response is there, or the claim was released by a failed write
+                .filter(found -> found.isEmpty() || found.get().getResponse() != null)
+                .repeatWhenEmpty(repeats -> repeats.delayElements(POLL_INTERVAL))
+                .timeout(pendingTimeout, Mono.error(() -> new IdempotencyKeyInProgressException(
+                        "The request with " + HEADER + " " + key + " is still in progress, retry later")))
+                .flatMap(found -> found.isPresent()
+                        ? replayOrAwait(key, entry, found.get(), write)
+                        : claim(key, entry, write));
+    }
+
+    // the write already happened, failing to store its response only weakens the dedup of later retries
+    private Mono<Void> complete(String key, V response) {
+        if (persistence == null) {
+            return Mono.empty();
+        }
+        return persistence.complete(key, response)
+                .onErrorResume(e -> {
+                    log.warn("Idempotency key could not be completed : {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // a claim left behind is taken over once pendingTimeout has passed
+    private Mono<Void> release(String key) {
+        if (persistence == null) {
+            return Mono.empty();
+        }
+        return persistence.release(key)
+                .onErrorResume(e -> {
+                    log.warn("Idempotency key could not be released : {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Entry<V> getIfPresent(String key) {
+        var entry = entries.get(key);
+        if (entry != null && entry.completed && nanoTime.getAsLong() - entry.createdAt >= ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    // forgetting a key in flight would let its retry run the write a second time
+    private boolean put(String key, Entry<V> entry) {
+        var iterator = entries.values().iterator();
+        while (entries.size() >= maxKeys && iterator.hasNext()) {
+            if (iterator.next().completed) {
+                iterator.remove();
+            }
+        }
+        if (entries.size() >= maxKeys) {
+            return false;
+        }
+        entries.put(key, entry);
+        return true;
+    }
+
+    private synchronized void remove(String key, Entry<V> entry) {
+        entries.remove(key, entry);
+    }
+
+    private static IdempotencyKeyReuseException reused(String key) {
+        return new IdempotencyKeyReuseException(HEADER + " " + key + " was already used for a different request");
+    }
+
+    private static Counter requestCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("idempotency.requests")
+                .tag("name", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public static class Result<V> {
+        private final V value;
+        private final boolean replayed;
+
+        Result(V value, boolean replayed) {
+            this.value = value;
+            this.replayed = replayed;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isReplayed() {
+            return replayed;
+        }
+
+        private Result<V> asReplayed() {
+            return new Result<>(value, true);
+        }
+    }
+
+    public static class Stored<V> {
+        private final String fingerprint;
+        private final V response;
+
+        public Stored(String fingerprint, V response) {
+            this.fingerprint = fingerprint;
+            this.response = response;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public V getResponse() {
+            return response;
+        }
+    }
+
+    private static class Entry<V> {
+        private final String fingerprint;
+        private final long createdAt;
+        private volatile boolean completed;
+        // replays the outcome of the write to every request with the key
+        private final Sinks.One<Result<V>> response = Sinks.one();
+
+        private Entry(String fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+}
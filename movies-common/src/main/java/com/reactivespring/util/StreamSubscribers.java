@@ -0,0 +1,194 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Gives every subscriber of a shared stream a bounded buffer of its own. The source is read as fast as it
+ * publishes, so a subscriber that reads slower falls behind on its own, without holding up the publisher or
+ * the other subscribers and without holding more than bufferSize values. What happens to a subscriber whose
+ * buffer is full is the overflow policy.
+ */
+@Slf4j
+public class StreamSubscribers<T> {
+
+    public enum Overflow {
+        // the oldest buffered value makes room for the new one
+        DROP_OLDEST,
+        // the new value is dropped
+        DROP_NEWEST,
+        // the subscriber is completed and has to reconnect
+        DISCONNECT,
+        // only the latest value per key is buffered, bufferSize bounds the number of keys
+        CONFLATE
+    }
+
+    // marks the end of the values merged with heartbeats
+    private static final Object END = new Object();
+
+    private final String name;
+    private final Overflow overflow;
+    private final int bufferSize;
+    private final Function<T, ?> key;
+    private final Duration heartbeatInterval;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+
+    public StreamSubscribers(String name, Overflow overflow, int bufferSize, Function<T, ?> key,
+                             Duration heartbeatInterval, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.overflow = overflow;
+        this.bufferSize = bufferSize;
+        this.key = key;
+        this.heartbeatInterval = heartbeatInterval;
+        Gauge.builder("stream.subscribers", subscribers, Set::size)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("stream.subscriber.lag.max", this, StreamSubscribers::maxLag)
+                .description("Values buffered for the subscriber that is furthest behind")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("stream.subscriber.dropped")
+                .tag("name", name)
+                .tag("overflow", overflow.name().toLowerCase())
+                .register(meterRegistry);
+        this.disconnectedCounter = Counter.builder("stream.subscriber.disconnected")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Flux<T> subscribe(Flux<T> source) {
+        return Flux.defer(() -> {
+            var subscriber = new Subscriber();
+            subscribers.add(subscriber);
+            return buffered(source.doOnNext(value -> subscriber.lag.incrementAndGet()), subscriber)
+                    .doOnNext(value -> subscriber.lag.decrementAndGet())
+                    .doFinally(signal -> {
+                        subscribers.remove(subscriber);
+                        if (subscriber.dropped.get() > 0) {
+                            log.info("{} subscriber ended after {} values were dropped for it", name, subscriber.dropped.get());
+                        }
+                    });
+        });
+    }
+
+    // a {"heartbeat":...} line every heartbeatInterval lets the client and any proxy in between tell an idle stream from a dead one
+    public Flux<Object> subscribeWithHeartbeats(Flux<T> source) {
+        var heartbeats = Flux.interval(heartbeatInterval)
+                // a subscriber too slow to take them does not need them queued up
+                .onBackpressureDrop()
+                .map(tick -> (Object) Map.of("heartbeat", Instant.now().toString()));
+        return Flux.merge(subscribe(source).cast(Object.class).concatWith(Mono.just(END)), heartbeats)
+                .takeWhile(value -> value != END);
+    }
+
+    int maxLag() {
+        return subscribers.stream().mapToInt(subscriber -> subscriber.lag.get()).max().orElse(0);
+    }
+
+    private Flux<T> buffered(Flux<T> source, Subscriber subscriber) {
+        switch (overflow) {
+            case DROP_NEWEST:
+                return source.onBackpressureBuffer(bufferSize, value -> dropped(subscriber), BufferOverflowStrategy.DROP_LATEST);
+            case DISCONNECT:
+                return source.onBackpressureBuffer(bufferSize, value -> subscriber.lag.decrementAndGet(), BufferOverflowStrategy.ERROR)
+                        .onErrorResume(Exceptions::isOverflow, e -> {
+                            log.info("Disconnecting a {} subscriber more than {} values behind", name, bufferSize);
+                            disconnectedCounter.increment();
+                            return Mono.empty();
+                        });
+            case CONFLATE:
+                return conflate(source, subscriber);
+            default:
+                return source.onBackpressureBuffer(bufferSize, value -> dropped(subscriber), BufferOverflowStrategy.DROP_OLDEST);
+        }
+    }
+
+    // buffers the latest value per key, in the order the keys were first buffered
+    private Flux<T> conflate(Flux<T> source, Subscriber subscriber) {
+        return Flux.create(sink -> {
+            var pending = new LinkedHashMap<Object, T>();
+            var done = new AtomicBoolean();
+            var wip = new AtomicInteger();
+            // source values and requests both drain, only the thread that finds wip at 0 emits and the others
+            // leave it one more pass, so values go out one at a time, in order and never past the demand
+            Runnable drain = () -> {
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                var missed = 1;
+                do {
+                    while (true) {
+                        T next;
+                        synchronized (pending) {
+                            if (pending.isEmpty()) {
+                                if (done.get()) {
+                                    sink.complete();
+                                }
+                                break;
+                            }
+                            if (sink.requestedFromDownstream() == 0) {
+                                break;
+                            }
+                            var oldest = pending.values().iterator();
+                            next = oldest.next();
+                            oldest.remove();
+                        }
+                        sink.next(next);
+                    }
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            };
+            var upstream = source.subscribe(value -> {
+                var valueKey = key.apply(value);
+                synchronized (pending) {
+                    if (pending.remove(valueKey) != null) {
+                        dropped(subscriber);
+                    } else if (pending.size() >= bufferSize) {
+                        var oldest = pending.keySet().iterator();
+                        oldest.next();
+                        oldest.remove();
+                        dropped(subscriber);
+                    }
+                    pending.put(valueKey, value);
+                }
+                drain.run();
+            }, sink::error, () -> {
+                done.set(true);
+                drain.run();
+            });
+            sink.onRequest(n -> drain.run());
+            sink.onDispose(upstream);
+        });
+    }
+
+    private void dropped(Subscriber subscriber) {
+        subscriber.lag.decrementAndGet();
+        subscriber.dropped.incrementAndGet();
+        droppedCounter.increment();
+    }
+
+    private static class Subscriber {
+        // values received from the source and not yet taken by the subscriber
+        private final AtomicInteger lag = new AtomicInteger();
+        private final AtomicInteger dropped = new AtomicInteger();
+    }
+}
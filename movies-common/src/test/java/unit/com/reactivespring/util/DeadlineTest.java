@@ -0,0 +1,117 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlineTest {
+
+    SimpleMeterRegistry meterRegistry;
+    Counter exceededCounter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        exceededCounter = Deadline.exceededCounter("moviesInfo", meterRegistry);
+    }
+
+    @Test
+    void remainingShrinksWithTime() {
+        var now = new AtomicLong();
+        var deadline = new Deadline(Duration.ofMillis(500), now::get);
+
+        now.addAndGet(Duration.ofMillis(200).toNanos());
+        assertEquals(Duration.ofMillis(300), deadline.remaining());
+        assertFalse(deadline.isExpired());
+
+        now.addAndGet(Duration.ofMillis(400).toNanos());
+        assertEquals(Duration.ZERO, deadline.remaining());
+        assertTrue(deadline.isExpired());
+    }
+
+    @Test
+    void sharedCopyMovesToTheLaterDeadline() {
+        var now = new AtomicLong();
+        var first = new Deadline(Duration.ofMillis(500), now::get);
+        var shared = first.copy();
+
+        assertTrue(shared.extendTo(new Deadline(Duration.ofMillis(800), now::get)));
+        assertTrue(shared.extendTo(new Deadline(Duration.ofMillis(100), now::get)));
+        assertEquals(Duration.ofMillis(800), shared.remaining());
+        assertEquals(Duration.ofMillis(500), first.remaining());
+
+        now.addAndGet(Duration.ofMillis(900).toNanos());
+        assertFalse(shared.extendTo(new Deadline(Duration.ofMillis(800), now::get)));
+    }
+
+    @Test
+    void parseHeader() {
+        assertEquals(Optional.of(Duration.ofMillis(250)), Deadline.parseHeader("250"));
+        assertEquals(Optional.empty(), Deadline.parseHeader(null));
+        assertEquals(Optional.empty(), Deadline.parseHeader("-1"));
+        assertEquals(Optional.empty(), Deadline.parseHeader("soon"));
+    }
+
+    @Test
+    void withoutDeadlineSourceIsUntouched() {
+        StepVerifier.create(Deadline.enforce(Mono.just("Batman Begins"), "moviesInfo", exceededCounter))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+    }
+
+    @Test
+    void expiredDeadlineDoesNotSubscribe() {
+        var subscribed = new AtomicBoolean();
+        var source = Mono.fromCallable(() -> "Batman Begins")
+                .doOnSubscribe(subscription -> subscribed.set(true));
+
+        StepVerifier.create(Deadline.enforce(source, "moviesInfo", exceededCounter)
+                        .contextWrite(Deadline.after(Duration.ZERO)::addTo))
+                .expectError(DeadlineExceededException.class)
+                .verify();
+
+        assertFalse(subscribed.get());
+        assertEquals(1.0, exceededCounter.count());
+    }
+
+    @Test
+    void cancelsWorkPastTheDeadline() {
+        var cancelled = new AtomicBoolean();
+        var source = Mono.delay(Duration.ofSeconds(5))
+                .doOnCancel(() -> cancelled.set(true));
+
+        StepVerifier.create(Deadline.enforce(source, "moviesInfo", exceededCounter)
+                        .contextWrite(Deadline.after(Duration.ofMillis(100))::addTo))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(1));
+
+        assertTrue(cancelled.get());
+        assertEquals(1.0, meterRegistry.get("deadline.exceeded").tag("stage", "moviesInfo").counter().count());
+    }
+
+    @Test
+    void fluxDeadlineCoversAllElements() {
+        // every element arrives well within a per-element timeout, the whole stream does not
+        var source = Flux.interval(Duration.ofMillis(50)).take(10);
+
+        StepVerifier.create(Deadline.enforce(source, "reviews", exceededCounter)
+                        .contextWrite(Deadline.after(Duration.ofMillis(200))::addTo))
+                .thenConsumeWhile(element -> true)
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+}
@@ -0,0 +1,272 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.IdempotencyKeyInProgressException;
+import com.reactivespring.exception.IdempotencyKeyReuseException;
+import com.reactivespring.exception.IdempotencyStoreFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyStoreTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicLong now;
+    AtomicInteger writes;
+    IdempotencyStore<String> store;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong();
+        writes = new AtomicInteger();
+        store = new IdempotencyStore<>("reviews", 2, Duration.ofMinutes(1), Duration.ofSeconds(1), null, meterRegistry, now::get);
+    }
+
+    @Test
+    void retryGetsTheStoredResponse() {
+        StepVerifier.create(store.execute("abc", "fp", () -> write("Awesome Movie")))
+                .assertNext(result -> assertFalse(result.isReplayed()))
+                .verifyComplete();
+        StepVerifier.create(store.execute("abc", "fp", () -> write("Awesome Movie")))
+                .assertNext(result -> {
+                    assertTrue(result.isReplayed());
+                    assertEquals("Awesome Movie", result.getValue());
+                })
+                .verifyComplete();
+
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void concurrentRequestWaitsForTheFirst() {
+        var first = Sinks.<String>one();
+        var firstResult = store.execute("abc", "fp", () -> {
+            writes.incrementAndGet();
+            return first.asMono();
+        }).toFuture();
+        var secondResult = store.execute("abc", "fp", () -> write("Awesome Movie")).toFuture();
+
+        assertFalse(secondResult.isDone());
+        first.tryEmitValue("Awesome Movie");
+
+        assertEquals("Awesome Movie", secondResult.join().getValue());
+        assertTrue(secondResult.join().isReplayed());
+        assertFalse(firstResult.join().isReplayed());
+        assertEquals(1, writes.get());
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("result", "joined").counter().count());
+    }
+
+    @Test
+    void cancelledRequestDoesNotStopTheWrite() {
+        var first = Sinks.<String>one();
+        var cancelled = store.execute("abc", "fp", () -> {
+            writes.incrementAndGet();
+            return first.asMono();
+        }).subscribe();
+
+        cancelled.dispose();
+        first.tryEmitValue("Awesome Movie");
+
+        StepVerifier.create(store.execute("abc", "fp", () -> write("Awesome Movie")))
+                .assertNext(result -> {
+                    assertTrue(result.isReplayed());
+                    assertEquals("Awesome Movie", result.getValue());
+                })
+                .verifyComplete();
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void sameKeyForAnotherRequestIsRejected() {
+        store.execute("abc", "fp", () -> write("Awesome Movie")).block();
+
+        StepVerifier.create(store.execute("abc", "other", () -> write("Bad Movie")))
+                .expectError(IdempotencyKeyReuseException.class)
+                .verify();
+    }
+
+    @Test
+    void failedWriteIsNotRemembered() {
+        StepVerifier.create(store.execute("abc", "fp", () -> Mono.error(new RuntimeException("Mongo down"))))
+                .expectErrorMessage("Mongo down")
+                .verify();
+
+        StepVerifier.create(store.execute("abc", "fp", () -> write("Awesome Movie")))
+                .assertNext(result -> assertFalse(result.isReplayed()))
+                .verifyComplete();
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        store.execute("abc", "fp", () -> write("Awesome Movie")).block();
+
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+        store.execute("abc", "fp", () -> write("Awesome Movie")).block();
+
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    void boundedToMaxKeys() {
+        store.execute("a", "fp", () -> write("a")).block();
+        store.execute("b", "fp", () -> write("b")).block();
+        store.execute("c", "fp", () -> write("c")).block();
+
+        assertEquals(2, store.size());
+        store.execute("a", "fp", () -> write("a")).block();
+        assertEquals(4, writes.get());
+    }
+
+    @Test
+    void inFlightKeysAreNotEvicted() {
+        var first = Sinks.<String>one();
+        var pendingFirst = store.execute("a", "fp", first::asMono).toFuture();
+        store.execute("b", "fp", () -> write("b")).block();
+
+        // evicts the completed b, a is still in flight
+        store.execute("c", "fp", Sinks.<String>one()::asMono).toFuture();
+
+        StepVerifier.create(store.execute("d", "fp", () -> write("d")))
+                .expectError(IdempotencyStoreFullException.class)
+                .verify();
+
+        first.tryEmitValue("a");
+        assertEquals("a", pendingFirst.join().getValue());
+        StepVerifier.create(store.execute("a", "fp", () -> write("a")))
+                .assertNext(result -> assertTrue(result.isReplayed()))
+                .verifyComplete();
+    }
+
+    @Test
+    void persistedKeyIsReplayed() {
+        var persistence = new InMemoryPersistence();
+        persistence.records.put("abc", new IdempotencyStore.Stored<>("fp", "Awesome Movie"));
+        var persistentStore = persistentStore(persistence);
+
+        StepVerifier.create(persistentStore.execute("abc", "fp", () -> write("Awesome Movie")))
+                .assertNext(result -> assertTrue(result.isReplayed()))
+                .verifyComplete();
+
+        assertEquals(0, writes.get());
+    }
+
+    @Test
+    void keyIsClaimedBeforeTheWrite() {
+        var persistence = new InMemoryPersistence();
+        var persistentStore = persistentStore(persistence);
+
+        StepVerifier.create(persistentStore.execute("abc", "fp", () -> {
+                    assertNull(persistence.records.get("abc").getResponse());
+                    return write("Awesome Movie");
+                }))
+                .assertNext(result -> assertFalse(result.isReplayed()))
+                .verifyComplete();
+
+        assertEquals("Awesome Movie", persistence.records.get("abc").getResponse());
+    }
+
+    @Test
+    void keyClaimedElsewhereWaitsForItsResponse() {
+        var persistence = new InMemoryPersistence();
+        persistence.records.put("abc", new IdempotencyStore.Stored<>("fp", null));
+        var persistentStore = persistentStore(persistence);
+
+        var pending = persistentStore.execute("abc", "fp", () -> write("Awesome Movie")).toFuture();
+        persistence.complete("abc", "Awesome Movie").block();
+
+        assertEquals("Awesome Movie", pending.join().getValue());
+        assertTrue(pending.join().isReplayed());
+        assertEquals(0, writes.get());
+    }
+
+    @Test
+    void keyReleasedElsewhereIsClaimedAgain() {
+        var persistence = new InMemoryPersistence();
+        persistence.records.put("abc", new IdempotencyStore.Stored<>("fp", null));
+        var persistentStore = persistentStore(persistence);
+
+        var pending = persistentStore.execute("abc", "fp", () -> write("Awesome Movie")).toFuture();
+        persistence.release("abc").block();
+
+        assertFalse(pending.join().isReplayed());
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void keyClaimedElsewhereTimesOut() {
+        var persistence = new InMemoryPersistence();
+        persistence.records.put("abc", new IdempotencyStore.Stored<>("fp", null));
+        var persistentStore = persistentStore(persistence);
+
+        StepVerifier.create(persistentStore.execute("abc", "fp", () -> write("Awesome Movie")))
+                .expectError(IdempotencyKeyInProgressException.class)
+                .verify();
+
+        assertEquals(0, writes.get());
+        assertEquals(0, persistentStore.size());
+    }
+
+    @Test
+    void failedWriteReleasesTheClaim() {
+        var persistence = new InMemoryPersistence();
+        var persistentStore = persistentStore(persistence);
+
+        StepVerifier.create(persistentStore.execute("abc", "fp", () -> Mono.error(new RuntimeException("Mongo down"))))
+                .expectErrorMessage("Mongo down")
+                .verify();
+
+        assertFalse(persistence.records.containsKey("abc"));
+    }
+
+    private IdempotencyStore<String> persistentStore(IdempotencyStore.Persistence<String> persistence) {
+        return new IdempotencyStore<>("reviews", 2, Duration.ofMinutes(1), Duration.ofMillis(500), persistence,
+                meterRegistry, now::get);
+    }
+
+    private Mono<String> write(String value) {
+        return Mono.fromCallable(() -> {
+            writes.incrementAndGet();
+            return value;
+        });
+    }
+
+    static class InMemoryPersistence implements IdempotencyStore.Persistence<String> {
+        final Map<String, IdempotencyStore.Stored<String>> records = new ConcurrentHashMap<>();
+
+        @Override
+        public Mono<IdempotencyStore.Stored<String>> claim(String key, String fingerprint) {
+            return Mono.justOrEmpty(records.putIfAbsent(key, new IdempotencyStore.Stored<>(fingerprint, null)));
+        }
+
+        @Override
+        public Mono<IdempotencyStore.Stored<String>> find(String key) {
+            return Mono.justOrEmpty(records.get(key));
+        }
+
+        @Override
+        public Mono<Void> complete(String key, String response) {
+            return Mono.fromRunnable(() -> records.computeIfPresent(key,
+                    (k, stored) -> new IdempotencyStore.Stored<>(stored.getFingerprint(), response)));
+        }
+
+        @Override
+        public Mono<Void> release(String key) {
+            return Mono.fromRunnable(() -> records.computeIfPresent(key,
+                    (k, stored) -> stored.getResponse() == null ? null : stored));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamSubscribersTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void dropOldest() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DROP_OLDEST, 3);
+
+        StepVerifier.create(subscribers.subscribe(Flux.range(1, 10)), 0)
+                .then(() -> assertEquals(3, subscribers.maxLag()))
+                .thenRequest(3)
+                .expectNext(8, 9, 10)
+                .verifyComplete();
+
+        assertEquals(0, subscribers.maxLag());
+        assertEquals(7.0, dropped("drop_oldest"));
+    }
+
+    @Test
+    void dropNewest() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DROP_NEWEST, 3);
+
+        StepVerifier.create(subscribers.subscribe(Flux.range(1, 10)), 0)
+                .thenRequest(3)
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+
+        assertEquals(7.0, dropped("drop_newest"));
+    }
+
+    @Test
+    void disconnect() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DISCONNECT, 3);
+
+        StepVerifier.create(subscribers.subscribe(Flux.range(1, 10)), 0)
+                .thenRequest(10)
+                .thenConsumeWhile(value -> true)
+                .verifyComplete();
+
+        assertEquals(1.0, meterRegistry.get("stream.subscriber.disconnected").counter().count());
+    }
+
+    @Test
+    void conflateKeepsLatestPerKey() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.CONFLATE, 3);
+
+        StepVerifier.create(subscribers.subscribe(Flux.range(1, 6)), 0)
+                .thenRequest(3)
+                .expectNext(4, 5, 6)
+                .verifyComplete();
+
+        assertEquals(3.0, dropped("conflate"));
+    }
+
+    @Test
+    void conflateEmitsInOrderWhileRequestedFromAnotherThread() {
+        // a key per value and room for all of them, nothing is conflated
+        var subscribers = new StreamSubscribers<Integer>("test", StreamSubscribers.Overflow.CONFLATE, 10_000,
+                value -> value, Duration.ofSeconds(15), meterRegistry);
+
+        var values = subscribers.subscribe(Flux.range(0, 10_000).subscribeOn(Schedulers.boundedElastic()))
+                // requests one value at a time from another thread while the source is still emitting
+                .publishOn(Schedulers.parallel(), 1)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(IntStream.range(0, 10_000).boxed().collect(Collectors.toList()), values);
+    }
+
+    @Test
+    void fastSubscriberDropsNothing() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DROP_OLDEST, 3);
+
+        StepVerifier.create(subscribers.subscribe(Flux.range(1, 10)))
+                .expectNextCount(10)
+                .verifyComplete();
+
+        assertEquals(0.0, dropped("drop_oldest"));
+    }
+
+    @Test
+    void heartbeats() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DROP_OLDEST, 3);
+
+        StepVerifier.withVirtualTime(() -> subscribers.subscribeWithHeartbeats(Flux.never()))
+                .expectSubscription()
+                .thenAwait(Duration.ofSeconds(15))
+                .assertNext(heartbeat -> assertTrue(((Map<?, ?>) heartbeat).containsKey("heartbeat")))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void heartbeatsEndWithTheStream() {
+        var subscribers = newSubscribers(StreamSubscribers.Overflow.DROP_OLDEST, 3);
+
+        StepVerifier.create(subscribers.subscribeWithHeartbeats(Flux.just(1, 2)))
+                .expectNext(1, 2)
+                .verifyComplete();
+    }
+
+    private StreamSubscribers<Integer> newSubscribers(StreamSubscribers.Overflow overflow, int bufferSize) {
+        // values of the same remainder share a key
+        return new StreamSubscribers<>("test", overflow, bufferSize, value -> value % 3,
+                Duration.ofSeconds(15), meterRegistry);
+    }
+
+    private double dropped(String overflow) {
+        return meterRegistry.get("stream.subscriber.dropped").tag("overflow", overflow).counter().count();
+    }
+}
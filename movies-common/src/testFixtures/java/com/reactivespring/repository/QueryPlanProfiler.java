@@ -0,0 +1,45 @@
+package com.reactivespring.repository;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Profiles every query between start and stop, so a test can fail on the ones answered by a collection scan.
+ */
+public class QueryPlanProfiler {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public QueryPlanProfiler(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    // forgets the queries profiled so far
+    public void start() {
+        stop();
+        reactiveMongoTemplate.dropCollection("system.profile").block();
+        reactiveMongoTemplate.executeCommand(new Document("profile", 2)).block();
+    }
+
+    public void stop() {
+        reactiveMongoTemplate.executeCommand(new Document("profile", 0)).block();
+    }
+
+    public void assertNoCollectionScan(Class<?> entityClass) {
+        var collectionName = reactiveMongoTemplate.getCollectionName(entityClass);
+        var profiled = reactiveMongoTemplate.find(query(where("ns").regex("\\." + collectionName + "$")
+                        .and("op").is("query")), Document.class, "system.profile")
+                .collectList()
+                .block();
+
+        assertFalse(profiled.isEmpty(), "nothing was profiled");
+        profiled.forEach(entry -> assertTrue(entry.getString("planSummary") != null
+                        && !entry.getString("planSummary").contains("COLLSCAN"),
+                () -> "collection scan : " + entry.get("command")));
+    }
+}
@@ -0,0 +1,36 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MongoIdempotencyPersistence;
+import com.reactivespring.util.IdempotencyStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "idempotency.persistence.enabled", havingValue = "true")
+    public MongoIdempotencyPersistence<MovieInfo> idempotencyPersistence(ReactiveMongoTemplate reactiveMongoTemplate,
+                                                              @Value("${idempotency.ttl:24h}") Duration ttl,
+                                                              @Value("${idempotency.persistence.pendingTimeout:30s}") Duration pendingTimeout){
+        return new MongoIdempotencyPersistence<>(reactiveMongoTemplate, MovieInfo.class, ttl, pendingTimeout);
+    }
+
+    // behind the Idempotency-Key header of POST /v1/movieinfos
+    @Bean
+    public IdempotencyStore<MovieInfo> movieInfoIdempotencyStore(ObjectProvider<MongoIdempotencyPersistence<MovieInfo>> persistence,
+                                                                 MeterRegistry meterRegistry,
+                                                                 @Value("${idempotency.maxKeys:10000}") int maxKeys,
+                                                                 @Value("${idempotency.ttl:24h}") Duration ttl,
+                                                                 @Value("${idempotency.persistence.pendingTimeout:30s}") Duration pendingTimeout){
+        return new IdempotencyStore<>("movieinfos", maxKeys, ttl, pendingTimeout, persistence.getIfAvailable(), meterRegistry);
+    }
+}
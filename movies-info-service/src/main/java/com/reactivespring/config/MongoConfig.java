@@ -0,0 +1,19 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MongoIndexInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.util.List;
+
+@Configuration
+public class MongoConfig {
+
+    // the documents whose @Indexed / @CompoundIndex indexes are created on startup
+    @Bean
+    public MongoIndexInitializer mongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate){
+        return new MongoIndexInitializer(reactiveMongoTemplate, List.of(MovieInfo.class));
+    }
+}
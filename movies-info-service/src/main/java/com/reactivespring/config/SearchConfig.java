@@ -0,0 +1,16 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.util.SearchIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SearchConfig {
+
+    @Bean
+    public SearchIndex<MovieInfo> movieInfoSearchIndex(MeterRegistry meterRegistry){
+        return new SearchIndex<>("movieinfos", MovieInfo::getName, meterRegistry);
+    }
+}
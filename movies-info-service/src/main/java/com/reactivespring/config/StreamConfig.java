@@ -0,0 +1,53 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.util.ReplayBuffer;
+import com.reactivespring.util.StreamSubscribers;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class StreamConfig {
+
+    public enum Source {
+        // changes made through this instance only
+        LOCAL,
+        // every change to the collection, from a MongoDB change stream (needs a replica set)
+        CHANGE_STREAM
+    }
+
+    @Bean
+    public ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                                         @Value("${stream.replay.maxSize:1000}") int maxSize,
+                                                         @Value("${stream.replay.maxAge:10m}") Duration maxAge){
+        // the serialized size is close enough to the heap held by a MovieInfo for the stream.buffer.bytes gauge
+        return new ReplayBuffer<>("movieinfos", maxSize, maxAge,
+                change -> serializedSize(objectMapper, change.getMovieInfo()), meterRegistry);
+    }
+
+    // buffers per subscriber of /v1/movieinfos/stream, conflate keeps the latest event per movieInfoId
+    @Bean
+    public StreamSubscribers<MovieInfoEvent> movieInfoSubscribers(MeterRegistry meterRegistry,
+                                                                  @Value("${stream.subscriber.overflow:drop-oldest}") StreamSubscribers.Overflow overflow,
+                                                                  @Value("${stream.subscriber.bufferSize:256}") int bufferSize,
+                                                                  @Value("${stream.subscriber.heartbeatInterval:15s}") Duration heartbeatInterval){
+        return new StreamSubscribers<>("movieinfos", overflow, bufferSize,
+                event -> event.getMovieInfo().getMovieInfoId(), heartbeatInterval, meterRegistry);
+    }
+
+    private static long serializedSize(ObjectMapper objectMapper, MovieInfo movieInfo) {
+        try {
+            return objectMapper.writeValueAsBytes(movieInfo).length;
+        } catch (JsonProcessingException e) {
+            return 0;
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.config.StreamConfig;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.InvalidFieldsException;
+import com.reactivespring.exception.InvalidPageRequestException;
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.exception.ResumeTokenExpiredException;
+import com.reactivespring.repository.MovieInfoCursor;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.util.IdempotencyStore;
+import com.reactivespring.util.ReplayBuffer;
+import com.reactivespring.util.StreamSubscribers;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/v1")
@@ -21,27 +41,126 @@ import javax.validation.Valid;
 public class MoviesInfoController {
 
 
-    private MoviesInfoService moviesInfoService;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // splits a request body into lines without holding more than one line in memory
+    private static final StringDecoder LINE_DECODER = StringDecoder.allMimeTypes();
+    // what fields= may ask for, movieInfoId is always returned
+    private static final Set<String> SELECTABLE_FIELDS = Set.of("name", "year", "cast", "release_date");
 
-    Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().all();
+    private MoviesInfoService moviesInfoService;
+    private ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer;
+    private StreamSubscribers<MovieInfoEvent> movieInfoSubscribers;
+    private IdempotencyStore<MovieInfo> movieInfoIdempotencyStore;
+    // with the change stream as source, MovieInfoChangeFeed publishes every change instead
+    private boolean publishLocalChanges;
+    private int defaultPageSize;
+    private int maxPageSize;
 
-    public MoviesInfoController(MoviesInfoService moviesInfoService){
+    public MoviesInfoController(MoviesInfoService moviesInfoService,
+                                ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer,
+                                StreamSubscribers<MovieInfoEvent> movieInfoSubscribers,
+                                IdempotencyStore<MovieInfo> movieInfoIdempotencyStore,
+                                @Value("${stream.source:local}") StreamConfig.Source streamSource,
+                                @Value("${pagination.defaultPageSize:100}") int defaultPageSize,
+                                @Value("${pagination.maxPageSize:500}") int maxPageSize){
 
         this.moviesInfoService = moviesInfoService;
+        this.movieInfoReplayBuffer = movieInfoReplayBuffer;
+        this.movieInfoSubscribers = movieInfoSubscribers;
+        this.movieInfoIdempotencyStore = movieInfoIdempotencyStore;
+        this.publishLocalChanges = streamSource == StreamConfig.Source.LOCAL;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
 
     }
     @GetMapping("/movieinfos")
-    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year,
-                                            @RequestParam(value = "name", required = false) String name){
+    public Mono<ResponseEntity<List<MovieInfo>>> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year,
+                                                                  @RequestParam(value = "name", required = false) String name,
+                                                                  @RequestParam(value = "ids", required = false) List<String> ids,
+                                                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                  @RequestParam(value = "orderBy", defaultValue = "id") String orderBy,
+                                                                  @RequestParam(value = "fields", required = false) List<String> fields){
         log.info("Year is {}:", year);
+        var selectedFields = selectedFields(fields);
+        if(ids != null) {
+            // not paged, so the number of ids is what bounds the $in
+            if (ids.size() > maxPageSize) {
+                throw new InvalidPageRequestException("At most " + maxPageSize + " ids per request");
+            }
+            return moviesInfoService.getMovieInfoByIds(ids, selectedFields)
+                    .collectList()
+                    .map(ResponseEntity.ok()::body);
+        }
+
+        var pageSize = pageSize(limit);
+        var cursor = cursor(after, orderBy);
+        // one more than the page size tells whether there is a next page
+        Flux<MovieInfo> movieInfos;
         if(year != null && name != null)
-            return moviesInfoService.getByNameAndYear(year, name);
+            movieInfos = moviesInfoService.getByNameAndYear(year, name, cursor, pageSize + 1, selectedFields);
         else if(year != null)
-            return moviesInfoService.getMovieInfoByYear(year);
+            movieInfos = moviesInfoService.getMovieInfoByYear(year, cursor, pageSize + 1, selectedFields);
         else if(name != null)
-            return moviesInfoService.getMovieInfoByName(name);
-        return moviesInfoService.getAllMovieInfos();
+            movieInfos = moviesInfoService.getMovieInfoByName(name, cursor, pageSize + 1, selectedFields);
+        else
+            movieInfos = moviesInfoService.getAllMovieInfos(cursor, pageSize + 1, selectedFields);
+
+        return movieInfos.collectList()
+                .map(page -> {
+                    if (page.size() <= pageSize) {
+                        return ResponseEntity.ok().body(page);
+                    }
+                    var lastOnPage = page.get(pageSize - 1);
+                    return ResponseEntity.ok()
+                            .header(NEXT_CURSOR_HEADER, cursor.next(lastOnPage).encode())
+                            .body(page.subList(0, pageSize));
+                });
+    }
+
+    // the page size is capped server side, whatever the client asks for
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        if (limit < 1) {
+            throw new InvalidPageRequestException("limit must be a positive value");
+        }
+        return Math.min(limit, maxPageSize);
     }
+
+    private Set<String> selectedFields(List<String> fields) {
+        if (fields == null) {
+            return Set.of();
+        }
+        var selectedFields = new LinkedHashSet<String>();
+        for (var field : fields) {
+            var trimmed = field.trim();
+            if (!SELECTABLE_FIELDS.contains(trimmed)) {
+                throw new InvalidFieldsException("Unknown field : " + trimmed + ", fields can be " + SELECTABLE_FIELDS);
+            }
+            selectedFields.add(trimmed);
+        }
+        return selectedFields;
+    }
+
+    // a cursor carries its own order, orderBy only applies to the first page
+    private MovieInfoCursor cursor(String after, String orderBy) {
+        try {
+            return after != null
+                    ? MovieInfoCursor.decode(after)
+                    : MovieInfoCursor.first(MovieInfoCursor.OrderBy.valueOf(orderBy.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageRequestException(e.getMessage());
+        }
+    }
+    @GetMapping("/movieinfos/search")
+    public Flux<MovieInfo> searchMovieInfos(@RequestParam("q") String query,
+                                            @RequestParam(value = "limit", defaultValue = "10") Integer limit){
+        // answered from the in-memory index, only movieInfoId, name and year are returned
+        return Flux.fromIterable(moviesInfoService.searchMovieInfos(query, pageSize(limit)));
+    }
+
     @GetMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieInfoById(@PathVariable String id){
         return moviesInfoService.getMovieInfoById(id)
@@ -50,23 +169,87 @@ public class MoviesInfoController {
     }
 
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> getMovieInfoById(){
-        return movieInfoSink.asFlux();
+    public Flux<Object> getMovieInfoById(@RequestParam(value = "afterSequence", required = false) Long afterSequence,
+                                         @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                         @RequestParam(value = "resumeToken", required = false) String resumeToken,
+                                         @RequestParam(value = "heartbeat", required = false, defaultValue = "false") boolean heartbeat){
+        // resume after the last sequence the client saw, without one replay whatever is still retained
+        var resumeAfter = afterSequence != null ? afterSequence : lastEventId != null ? lastEventId : 0L;
+        // sequences are per instance, resume tokens identify the same change on every instance
+        if (resumeToken != null) {
+            // replaying everything retained would be neither a resume nor a full reload, the client has to reload
+            resumeAfter = movieInfoReplayBuffer.sequenceOf(change -> resumeToken.equals(change.getResumeToken()))
+                    .orElseThrow(() -> new ResumeTokenExpiredException("resumeToken " + resumeToken
+                            + " is unknown or no longer retained, reload the movie infos and stream without it"));
+        }
+        var events = movieInfoReplayBuffer.events(resumeAfter)
+                .map(event -> new MovieInfoEvent(event.getSequence(), event.getValue().getOperationType(),
+                        event.getValue().getResumeToken(), event.getValue().getMovieInfo()));
+        // heartbeat lines are opt-in, not every client expects a line that is not a MovieInfo
+        return heartbeat
+                ? movieInfoSubscribers.subscribeWithHeartbeats(events)
+                : movieInfoSubscribers.subscribe(events).cast(Object.class);
     }
 
 
     @PostMapping("/movieinfos")
-    @ResponseStatus(HttpStatus.CREATED)
-    public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo){
+    public Mono<ResponseEntity<MovieInfo>> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo,
+                                                        @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey){
 
+        if (idempotencyKey == null) {
+            return addMovieInfo(movieInfo).map(ResponseEntity.status(HttpStatus.CREATED)::body);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            return Mono.error(new MovieInfoDataException(IdempotencyStore.HEADER + " must have 1 to "
+                    + IdempotencyStore.MAX_KEY_LENGTH + " characters"));
+        }
+        // a retry gets the MovieInfo stored for its key, without a second insert or stream event
+        var fingerprint = IdempotencyStore.fingerprint(movieInfo.getMovieInfoId(), movieInfo.getName(), movieInfo.getYear(),
+                movieInfo.getCast(), movieInfo.getRelease_date());
+        return movieInfoIdempotencyStore.execute(idempotencyKey, fingerprint, () -> addMovieInfo(movieInfo))
+                .map(result -> ResponseEntity.status(HttpStatus.CREATED)
+                        .header(IdempotencyStore.REPLAYED_HEADER, String.valueOf(result.isReplayed()))
+                        .body(result.getValue()));
+    }
+
+    private Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
         return moviesInfoService.addMovieInfo(movieInfo)
-                .doOnNext(savedInfo -> movieInfoSink.tryEmitNext(savedInfo));
+                .doOnNext(savedInfo -> publishLocalChange(
+                        new MovieInfoChange(MovieInfoChange.OperationType.INSERT, savedInfo, null)));
+    }
+
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoBulkResult> addMovieInfos(@RequestBody Flux<DataBuffer> body){
+
+        var lines = LINE_DECODER.decode(body, ResolvableType.forClass(String.class), null, Map.of());
+        return moviesInfoService.importMovieInfos(lines)
+                .doOnNext(results -> {
+                    if (publishLocalChanges) {
+                        movieInfoReplayBuffer.publishAll(results.stream()
+                                .filter(result -> result.getStatus() == MovieInfoBulkResult.Status.CREATED)
+                                .map(result -> new MovieInfoChange(MovieInfoChange.OperationType.INSERT, result.getMovieInfo(), null))
+                                .collect(Collectors.toList()));
+                    }
+                })
+                .flatMapIterable(results -> results);
     }
 
     @PutMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody @Valid MovieInfo updateMovieInfo, @PathVariable String id){
 
         return moviesInfoService.updateMovieInfo(updateMovieInfo, id)
+                .doOnNext(updatedInfo -> publishLocalChange(
+                        new MovieInfoChange(MovieInfoChange.OperationType.UPDATE, updatedInfo, null)))
+                .map(ResponseEntity.ok()::body)
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+    @PatchMapping("/movieinfos/{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@RequestBody MovieInfo patchMovieInfo, @PathVariable String id){
+
+        return moviesInfoService.patchMovieInfo(patchMovieInfo, id)
+                .doOnNext(updatedInfo -> publishLocalChange(
+                        new MovieInfoChange(MovieInfoChange.OperationType.UPDATE, updatedInfo, null)))
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
@@ -74,6 +257,13 @@ public class MoviesInfoController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovieInfo(@PathVariable String id){
 
-        return moviesInfoService.deleteById(id);
+        return moviesInfoService.deleteById(id)
+                .doOnSuccess(deleted -> publishLocalChange(MovieInfoChange.deleted(id, null)));
+    }
+
+    private void publishLocalChange(MovieInfoChange change) {
+        if (publishLocalChanges) {
+            movieInfoReplayBuffer.publish(change);
+        }
     }
 }
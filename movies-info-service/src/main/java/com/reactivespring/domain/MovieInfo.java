@@ -1,10 +1,14 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.validation.annotation.Validated;
 
@@ -18,6 +22,13 @@ import java.util.List;
 @AllArgsConstructor
 @Document
 @Validated
+// fields left out of a projection stay null and are not written either
+@JsonInclude(JsonInclude.Include.NON_NULL)
+// year_id serves year lookups and the (year, _id) keyset order, name_year_id serves name and name + year lookups
+@CompoundIndexes({
+        @CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}"),
+        @CompoundIndex(name = "name_year_id", def = "{'name': 1, 'year': 1, '_id': 1}")
+})
 public class MovieInfo {
     @Id
     private String movieInfoId;
@@ -30,4 +41,11 @@ public class MovieInfo {
     private List<@NotBlank(message = "movie.cast must be present") String> cast;
     @NonNull
     private LocalDate release_date;
+    // bumped on every update, sending it back makes PUT and PATCH conditional on it
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
@@ -0,0 +1,43 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieInfoBulkResult {
+
+    public enum Status {
+        CREATED,
+        // not parseable or not valid, never sent to mongo
+        INVALID,
+        // rejected by mongo, e.g. a duplicate movieInfoId
+        FAILED
+    }
+
+    // 1-based line of the record in the request body
+    private long line;
+    private String movieInfoId;
+    private Status status;
+    private String error;
+    // the inserted document, for the stream and the search index only
+    @JsonIgnore
+    private MovieInfo movieInfo;
+
+    public static MovieInfoBulkResult created(long line, MovieInfo movieInfo) {
+        return new MovieInfoBulkResult(line, movieInfo.getMovieInfoId(), Status.CREATED, null, movieInfo);
+    }
+
+    public static MovieInfoBulkResult invalid(long line, String error) {
+        return new MovieInfoBulkResult(line, null, Status.INVALID, error, null);
+    }
+
+    public static MovieInfoBulkResult failed(long line, MovieInfo movieInfo, String error) {
+        return new MovieInfoBulkResult(line, movieInfo.getMovieInfoId(), Status.FAILED, error, null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoChange {
+
+    public enum OperationType {
+        INSERT, UPDATE, DELETE
+    }
+
+    private OperationType operationType;
+    // only the movieInfoId for deletes
+    private MovieInfo movieInfo;
+    // change stream resume token, null for changes published by this instance
+    private String resumeToken;
+
+    public static MovieInfoChange deleted(String movieInfoId, String resumeToken) {
+        var movieInfo = new MovieInfo();
+        movieInfo.setMovieInfoId(movieInfoId);
+        return new MovieInfoChange(OperationType.DELETE, movieInfo, resumeToken);
+    }
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a MovieInfo on the stream, plus its sequence to resume from after a reconnect
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+    private long sequence;
+    private MovieInfoChange.OperationType operationType;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String resumeToken;
+    @JsonUnwrapped
+    private MovieInfo movieInfo;
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+public class InvalidFieldsException extends RuntimeException{
+    private String message;
+
+    public InvalidFieldsException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
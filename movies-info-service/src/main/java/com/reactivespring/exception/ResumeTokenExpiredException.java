@@ -0,0 +1,10 @@
+package com.reactivespring.exception;
+
+public class ResumeTokenExpiredException extends RuntimeException{
+    private String message;
+
+    public ResumeTokenExpiredException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
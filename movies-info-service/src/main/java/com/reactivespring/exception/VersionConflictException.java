@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+public class VersionConflictException extends RuntimeException{
+    private String message;
+
+    public VersionConflictException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
@@ -1,8 +1,19 @@
 package com.reactivespring.exceptionHandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.IdempotencyKeyInProgressException;
+import com.reactivespring.exception.IdempotencyKeyReuseException;
+import com.reactivespring.exception.IdempotencyStoreFullException;
+import com.reactivespring.exception.InvalidFieldsException;
+import com.reactivespring.exception.InvalidPageRequestException;
+import com.reactivespring.exception.MovieInfoDataException;
 import com.reactivespring.exception.MovieInfoNotfoundException;
+import com.reactivespring.exception.ResumeTokenExpiredException;
+import com.reactivespring.exception.VersionConflictException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -32,4 +43,54 @@ public class GlobalErrorHandler {
         log.error("Exception caught in handleMovieInfoNotfoundException :  {} " ,ex.getMessage(),  ex);
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
+    @ExceptionHandler(InvalidPageRequestException.class)
+    public ResponseEntity<String> handleInvalidPageRequestException(InvalidPageRequestException ex){
+        log.error("Exception caught in handleInvalidPageRequestException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+    @ExceptionHandler(InvalidFieldsException.class)
+    public ResponseEntity<String> handleInvalidFieldsException(InvalidFieldsException ex){
+        log.error("Exception caught in handleInvalidFieldsException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+    @ExceptionHandler(MovieInfoDataException.class)
+    public ResponseEntity<String> handleMovieInfoDataException(MovieInfoDataException ex){
+        log.error("Exception caught in handleMovieInfoDataException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+    @ExceptionHandler(VersionConflictException.class)
+    public ResponseEntity<String> handleVersionConflictException(VersionConflictException ex){
+        log.error("Exception caught in handleVersionConflictException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+    @ExceptionHandler(ResumeTokenExpiredException.class)
+    public ResponseEntity<String> handleResumeTokenExpiredException(ResumeTokenExpiredException ex){
+        log.error("Exception caught in handleResumeTokenExpiredException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GONE).body(ex.getMessage());
+    }
+    @ExceptionHandler(DuplicateKeyException.class)
+    public ResponseEntity<String> handleDuplicateKeyException(DuplicateKeyException ex){
+        log.error("Exception caught in handleDuplicateKeyException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("MovieInfo already exists");
+    }
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<String> handleDeadlineExceededException(DeadlineExceededException ex){
+        log.error("Exception caught in handleDeadlineExceededException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(ex.getMessage());
+    }
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReuseException(IdempotencyKeyReuseException ex){
+        log.error("Exception caught in handleIdempotencyKeyReuseException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+    }
+    @ExceptionHandler(IdempotencyKeyInProgressException.class)
+    public ResponseEntity<String> handleIdempotencyKeyInProgressException(IdempotencyKeyInProgressException ex){
+        log.error("Exception caught in handleIdempotencyKeyInProgressException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+    @ExceptionHandler(IdempotencyStoreFullException.class)
+    public ResponseEntity<String> handleIdempotencyStoreFullException(IdempotencyStoreFullException ex){
+        log.error("Exception caught in handleIdempotencyStoreFullException :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+    }
 }
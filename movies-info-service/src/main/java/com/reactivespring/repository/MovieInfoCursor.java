@@ -0,0 +1,100 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Position in a keyset-paginated listing of MovieInfo, ordered by _id or by (year, _id). The next page starts
+ * strictly after the last document of the previous one, so a deep page costs the same as the first.
+ */
+public class MovieInfoCursor {
+
+    public enum OrderBy {
+        ID, YEAR
+    }
+
+    private static final int BSON_OBJECT_ID = 7;
+
+    private final OrderBy orderBy;
+    private final Integer year;
+    private final String movieInfoId;
+
+    private MovieInfoCursor(OrderBy orderBy, Integer year, String movieInfoId) {
+        this.orderBy = orderBy;
+        this.year = year;
+        this.movieInfoId = movieInfoId;
+    }
+
+    public static MovieInfoCursor first(OrderBy orderBy) {
+        return new MovieInfoCursor(orderBy, null, null);
+    }
+
+    public MovieInfoCursor next(MovieInfo last) {
+        return new MovieInfoCursor(orderBy, last.getYear(), last.getMovieInfoId());
+    }
+
+    public OrderBy getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isFirst() {
+        return movieInfoId == null;
+    }
+
+    public Sort sort() {
+        return orderBy == OrderBy.YEAR
+                ? Sort.by(Sort.Direction.ASC, "year", "movieInfoId")
+                : Sort.by(Sort.Direction.ASC, "movieInfoId");
+    }
+
+    // documents strictly after this cursor in sort() order
+    public Criteria criteria() {
+        if (isFirst()) {
+            return new Criteria();
+        }
+        if (orderBy == OrderBy.YEAR) {
+            return new Criteria().orOperator(
+                    where("year").gt(year),
+                    new Criteria().andOperator(where("year").is(year), idAfter()));
+        }
+        return idAfter();
+    }
+
+    private Criteria idAfter() {
+        // ids that are valid ObjectIds are stored as ObjectIds, and every ObjectId sorts after every string id
+        if (ObjectId.isValid(movieInfoId)) {
+            return where("movieInfoId").gt(new ObjectId(movieInfoId));
+        }
+        return new Criteria().orOperator(
+                where("movieInfoId").gt(movieInfoId),
+                where("movieInfoId").type(BSON_OBJECT_ID));
+    }
+
+    public String encode() {
+        var value = orderBy == OrderBy.YEAR ? "y:" + year + ":" + movieInfoId : "i:" + movieInfoId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MovieInfoCursor decode(String cursor) {
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith("i:")) {
+                return new MovieInfoCursor(OrderBy.ID, null, value.substring(2));
+            }
+            var parts = value.split(":", 3);
+            if (parts.length == 3 && parts[0].equals("y")) {
+                return new MovieInfoCursor(OrderBy.YEAR, Integer.valueOf(parts[1]), parts[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            // not base64 or not a year, reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor : " + cursor);
+    }
+}
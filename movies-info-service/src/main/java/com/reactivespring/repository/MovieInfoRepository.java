@@ -4,9 +4,9 @@ import com.reactivespring.domain.MovieInfo;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String> {
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String>, MovieInfoRepositoryCustom {
 
     Flux<MovieInfo> findByYear(Integer year);
     Flux<MovieInfo> findByName(String name);
-    Flux<MovieInfo> findByNameAndYear(Integer year, String name);
+    Flux<MovieInfo> findByNameAndYear(String name, Integer year);
 }
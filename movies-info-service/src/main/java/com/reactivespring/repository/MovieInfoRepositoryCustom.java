@@ -0,0 +1,31 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface MovieInfoRepositoryCustom {
+
+    // run with maxTime set to what is left of the deadline in the subscriber context
+    Flux<MovieInfo> findWithDeadline(Query query);
+    Mono<MovieInfo> findOneWithDeadline(Query query);
+
+    // at most limit documents matching criteria, in the cursor's order and strictly after it
+    // only the given fields (plus the ones the cursor needs) are read, all of them when empty
+    Flux<MovieInfo> findPage(Criteria criteria, MovieInfoCursor after, int limit, Collection<String> fields);
+
+    // one unordered insertMany, a failing document does not stop the others
+    // returns the write errors by position in movieInfos and sets the generated ids on movieInfos
+    Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos);
+
+    // applies update and bumps the version in one findAndModify, only at expectedVersion unless that is null
+    // empty when there is no such movieInfo, VersionConflictException when it is at another version
+    Mono<MovieInfo> findAndUpdate(String id, Long expectedVersion, Update update);
+}
@@ -0,0 +1,131 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.VersionConflictException;
+import com.reactivespring.util.Deadline;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class MovieInfoRepositoryCustomImpl implements MovieInfoRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findWithDeadline(Query query) {
+        return Flux.deferContextual(context -> reactiveMongoTemplate.find(withMaxTime(query, context), MovieInfo.class))
+                .onErrorMap(MovieInfoRepositoryCustomImpl::isMaxTimeExpired,
+                        ex -> new DeadlineExceededException("Deadline exceeded in mongo"));
+    }
+
+    @Override
+    public Mono<MovieInfo> findOneWithDeadline(Query query) {
+        return Mono.deferContextual(context -> reactiveMongoTemplate.findOne(withMaxTime(query, context), MovieInfo.class))
+                .onErrorMap(MovieInfoRepositoryCustomImpl::isMaxTimeExpired,
+                        ex -> new DeadlineExceededException("Deadline exceeded in mongo"));
+    }
+
+    @Override
+    public Flux<MovieInfo> findPage(Criteria criteria, MovieInfoCursor after, int limit, Collection<String> fields) {
+        var pageCriteria = after.isFirst() ? criteria : new Criteria().andOperator(criteria, after.criteria());
+        var query = Query.query(pageCriteria)
+                .with(after.sort())
+                .limit(limit);
+        if (!fields.isEmpty()) {
+            fields.forEach(query.fields()::include);
+            // the next cursor is built from the sort keys of the last document
+            after.sort().forEach(order -> query.fields().include(order.getProperty()));
+        }
+        return findWithDeadline(query);
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos) {
+        var converter = reactiveMongoTemplate.getConverter();
+        var documents = movieInfos.stream()
+                .map(movieInfo -> {
+                    // what save would start a new movieinfo at, without it any expected version matches
+                    if (movieInfo.getVersion() == null) {
+                        movieInfo.setVersion(0L);
+                    }
+                    var document = new Document();
+                    converter.write(movieInfo, document);
+                    return document;
+                })
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .doOnNext(errors -> {
+                    // the driver adds an ObjectId _id to every document that had none
+                    for (int i = 0; i < documents.size(); i++) {
+                        movieInfos.get(i).setMovieInfoId(idOf(documents.get(i)));
+                    }
+                });
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndUpdate(String id, Long expectedVersion, Update update) {
+        // documents written before versioning have no version field, version null matches them
+        var criteria = expectedVersion == null
+                ? where("movieInfoId").is(id)
+                : where("movieInfoId").is(id).and("version").is(expectedVersion);
+        return reactiveMongoTemplate.findAndModify(Query.query(criteria), update.inc("version", 1),
+                        FindAndModifyOptions.options().returnNew(true), MovieInfo.class)
+                // only a failed conditional update costs a second round trip, to tell a conflict from a missing id
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null
+                        ? Mono.empty()
+                        : reactiveMongoTemplate.exists(Query.query(where("movieInfoId").is(id)), MovieInfo.class)
+                                .flatMap(exists -> exists
+                                        ? Mono.error(new VersionConflictException("MovieInfo " + id
+                                                + " was modified, it is no longer at version " + expectedVersion))
+                                        : Mono.empty())));
+    }
+
+    private static String idOf(Document document) {
+        var id = document.get("_id");
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+    }
+
+    private static Query withMaxTime(Query query, ContextView context) {
+        // a maxTime of 0 would mean no limit at all
+        Deadline.from(context).ifPresent(deadline ->
+                query.maxTime(Duration.ofMillis(Math.max(1, deadline.remaining().toMillis()))));
+        return query;
+    }
+
+    private static boolean isMaxTimeExpired(Throwable ex) {
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoExecutionTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
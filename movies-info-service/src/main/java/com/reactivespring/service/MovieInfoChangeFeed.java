@@ -0,0 +1,170 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.util.ReplayBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tails the movieInfo collection with a single change stream cursor and publishes every insert, update and
+ * delete into the replay buffer, which fans them out to all subscribers of this instance. The search index
+ * follows the same changes, so it also sees writes made through other instances.
+ * When the last published change has fallen off the oplog the cursor cannot resume after it. The changes in
+ * between are lost: the replay buffer is reset, the search index reloaded, and the cursor restarted from
+ * just before the reload.
+ */
+@Component
+@ConditionalOnProperty(name = "stream.source", havingValue = "change-stream")
+@Slf4j
+public class MovieInfoChangeFeed {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer;
+    private MoviesInfoService moviesInfoService;
+    // ChangeStreamFatalError, InvalidResumeToken and ChangeStreamHistoryLost
+    private static final List<Integer> HISTORY_LOST_CODES = List.of(280, 260, 286);
+
+    private volatile String lastResumeToken;
+    // where a cursor starts that has no change to resume after, once the history was lost
+    private volatile BsonTimestamp restartAt;
+    private volatile boolean historyLost;
+    private Disposable subscription;
+
+    public MovieInfoChangeFeed(ReactiveMongoTemplate reactiveMongoTemplate,
+                               ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer,
+                               MoviesInfoService moviesInfoService) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoReplayBuffer = movieInfoReplayBuffer;
+        this.moviesInfoService = moviesInfoService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = Flux.defer(this::listen)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("MovieInfo change stream failed, resuming after {} : {}",
+                                lastResumeToken, retrySignal.failure().getMessage())))
+                .subscribe(change -> {
+                    movieInfoReplayBuffer.publish(change);
+                    moviesInfoService.applyToSearchIndex(change);
+                    lastResumeToken = change.getResumeToken();
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private Flux<MovieInfoChange> listen() {
+        if (historyLost) {
+            return resync().thenMany(Flux.defer(this::listen));
+        }
+        // a reopened cursor continues right after the last published change, nothing is missed or repeated
+        var resumeAfter = lastResumeToken;
+        var startAt = restartAt;
+        return reactiveMongoTemplate.changeStream(MovieInfo.class)
+                .withOptions(options -> {
+                    options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+                    if (resumeAfter != null) {
+                        options.resumeAfter(fromResumeToken(resumeAfter));
+                    } else if (startAt != null) {
+                        options.resumeAt(startAt);
+                    }
+                })
+                .watchCollection(MovieInfo.class)
+                .listen()
+                .<MovieInfoChange>handle((event, sink) -> toChange(event).ifPresent(sink::next))
+                // resuming again fails the same way on every retry
+                .onErrorResume(MovieInfoChangeFeed::isHistoryLost, e -> {
+                    log.warn("MovieInfo change stream cannot resume after {}, reloading : {}", resumeAfter, e.getMessage());
+                    historyLost = true;
+                    // clients cannot resume from before the lost changes either
+                    movieInfoReplayBuffer.reset();
+                    return Flux.defer(this::listen);
+                });
+    }
+
+    // the cluster time is taken before the reload, so the restarted cursor repeats rather than misses a change
+    private Mono<Void> resync() {
+        return reactiveMongoTemplate.executeCommand(new Document("ping", 1))
+                .flatMap(reply -> {
+                    restartAt = reply.get("operationTime", BsonTimestamp.class);
+                    lastResumeToken = null;
+                    return moviesInfoService.loadSearchIndex();
+                })
+                .doOnNext(size -> {
+                    log.info("Search index reloaded with {} movieinfos, change stream restarts at {}", size, restartAt);
+                    historyLost = false;
+                })
+                .then();
+    }
+
+    private static boolean isHistoryLost(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException
+                    && HISTORY_LOST_CODES.contains(((MongoCommandException) cause).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Optional<MovieInfoChange> toChange(ChangeStreamEvent<MovieInfo> event) {
+        if (event.getOperationType() == null || event.getResumeToken() == null) {
+            return Optional.empty();
+        }
+        var resumeToken = toResumeToken(event.getResumeToken());
+        switch (event.getOperationType()) {
+            case INSERT:
+                return Optional.of(new MovieInfoChange(MovieInfoChange.OperationType.INSERT, event.getBody(), resumeToken));
+            case UPDATE:
+            case REPLACE:
+                // deleted before the update was looked up, the delete follows on the stream
+                return Optional.ofNullable(event.getBody())
+                        .map(movieInfo -> new MovieInfoChange(MovieInfoChange.OperationType.UPDATE, movieInfo, resumeToken));
+            case DELETE:
+                return Optional.of(MovieInfoChange.deleted(documentId(event), resumeToken));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static String documentId(ChangeStreamEvent<MovieInfo> event) {
+        var id = event.getRaw().getDocumentKey().get("_id");
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private static String toResumeToken(BsonValue resumeToken) {
+        return resumeToken.asDocument().getString("_data").getValue();
+    }
+
+    private static BsonDocument fromResumeToken(String resumeToken) {
+        return new BsonDocument("_data", new BsonString(resumeToken));
+    }
+}
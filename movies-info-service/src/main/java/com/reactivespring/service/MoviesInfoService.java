@@ -1,58 +1,268 @@
 package com.reactivespring.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.repository.MovieInfoCursor;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.SearchIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
+@Slf4j
 public class MoviesInfoService {
 
     private MovieInfoRepository movieInfoRepository;
+    private SearchIndex<MovieInfo> movieInfoSearchIndex;
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private Counter deadlineExceededCounter;
+    private int bulkBatchSize;
+    private int bulkMaxInFlightBatches;
 
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository, SearchIndex<MovieInfo> movieInfoSearchIndex,
+                             ObjectMapper objectMapper, Validator validator, MeterRegistry meterRegistry,
+                             @Value("${bulk.batchSize:500}") int bulkBatchSize,
+                             @Value("${bulk.maxInFlightBatches:4}") int bulkMaxInFlightBatches) {
         this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoSearchIndex = movieInfoSearchIndex;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.deadlineExceededCounter = Deadline.exceededCounter("mongo", meterRegistry);
+        this.bulkBatchSize = bulkBatchSize;
+        this.bulkMaxInFlightBatches = bulkMaxInFlightBatches;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        loadSearchIndex()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("Building the search index failed, retrying : {}",
+                                retrySignal.failure().getMessage())))
+                .subscribe(size -> log.info("Search index built with {} movieinfos", size),
+                        ex -> log.error("Building the search index failed : {}", ex.getMessage(), ex));
+    }
+
+    // replaces whatever the search index holds with the movieinfos in mongo, emits the new size
+    public Mono<Integer> loadSearchIndex() {
+        // searches only see name and year, there is no need to keep whole documents in memory
+        var query = new Query();
+        query.fields().include("name").include("year");
+        return movieInfoRepository.findWithDeadline(query)
+                .doOnSubscribe(subscription -> movieInfoSearchIndex.clear())
+                .doOnNext(this::index)
+                .then(Mono.fromSupplier(movieInfoSearchIndex::size));
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
 
-        return movieInfoRepository.save(movieInfo);
+        return movieInfoRepository.save(movieInfo)
+                .doOnNext(this::index);
+    }
+
+    /**
+     * Inserts one movieInfo per JSON line, in batches of bulk.batchSize with at most bulk.maxInFlightBatches
+     * being written at a time, so only that many records are ever held in memory. Emits the results of each
+     * batch, in line order, as soon as the batch is written.
+     */
+    public Flux<List<MovieInfoBulkResult>> importMovieInfos(Flux<String> lines) {
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parse(line.getT1() + 1, line.getT2()))
+                .buffer(bulkBatchSize)
+                .flatMapSequential(this::insertBatch, bulkMaxInFlightBatches);
     }
 
-    public Flux<MovieInfo> getAllMovieInfos() {
-        return movieInfoRepository.findAll();
+    private BulkRecord parse(long line, String json) {
+        MovieInfo movieInfo;
+        try {
+            movieInfo = objectMapper.readValue(json, MovieInfo.class);
+        } catch (JsonProcessingException e) {
+            return new BulkRecord(line, null, e.getOriginalMessage());
+        }
+        var constraintViolations = validator.validate(movieInfo);
+        if (!constraintViolations.isEmpty()) {
+            var errorMessage = constraintViolations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+            return new BulkRecord(line, null, errorMessage);
+        }
+        return new BulkRecord(line, movieInfo, null);
+    }
+
+    private Mono<List<MovieInfoBulkResult>> insertBatch(List<BulkRecord> batch) {
+        var movieInfos = batch.stream()
+                .filter(record -> record.movieInfo != null)
+                .map(record -> record.movieInfo)
+                .collect(Collectors.toList());
+        var inserted = movieInfos.isEmpty()
+                ? Mono.just(Map.<Integer, String>of())
+                // mongo unreachable or similar, the whole batch failed but the next one may go through
+                : movieInfoRepository.insertUnordered(movieInfos)
+                        .onErrorResume(ex -> Mono.just(IntStream.range(0, movieInfos.size()).boxed()
+                                .collect(Collectors.toMap(i -> i, i -> String.valueOf(ex.getMessage())))));
+        return inserted.map(writeErrors -> {
+            var results = new ArrayList<MovieInfoBulkResult>(batch.size());
+            var position = 0;
+            for (var record : batch) {
+                if (record.movieInfo == null) {
+                    results.add(MovieInfoBulkResult.invalid(record.line, record.error));
+                    continue;
+                }
+                var writeError = writeErrors.get(position++);
+                if (writeError == null) {
+                    index(record.movieInfo);
+                    results.add(MovieInfoBulkResult.created(record.line, record.movieInfo));
+                } else {
+                    results.add(MovieInfoBulkResult.failed(record.line, record.movieInfo, writeError));
+                }
+            }
+            return results;
+        });
+    }
+
+    public List<MovieInfo> searchMovieInfos(String query, int limit) {
+        return movieInfoSearchIndex.search(query, limit);
+    }
+
+    // changes made through other instances, as seen on the change stream
+    public void applyToSearchIndex(MovieInfoChange change) {
+        if (change.getOperationType() == MovieInfoChange.OperationType.DELETE) {
+            movieInfoSearchIndex.remove(change.getMovieInfo().getMovieInfoId());
+        } else {
+            index(change.getMovieInfo());
+        }
+    }
+
+    public Flux<MovieInfo> getAllMovieInfos(MovieInfoCursor after, int limit, Set<String> fields) {
+        return findPage(new Criteria(), after, limit, fields);
     }
 
     public Mono<MovieInfo> getMovieInfoById(String id) {
-        return movieInfoRepository.findById(id);
+        return Deadline.enforce(movieInfoRepository.findOneWithDeadline(query(where("movieInfoId").is(id))),
+                "mongo", deadlineExceededCounter);
+    }
+
+    public Flux<MovieInfo> getMovieInfoByIds(List<String> ids, Set<String> fields) {
+        var query = query(where("movieInfoId").in(ids));
+        fields.forEach(query.fields()::include);
+        return find(query);
     }
 
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updateMovieInfo, String id) {
 
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updateMovieInfo.getCast());
-                    movieInfo.setName(updateMovieInfo.getName());
-                    movieInfo.setRelease_date(updateMovieInfo.getRelease_date());
-                    movieInfo.setYear(updateMovieInfo.getYear());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        var update = new Update()
+                .set("name", updateMovieInfo.getName())
+                .set("year", updateMovieInfo.getYear())
+                .set("cast", updateMovieInfo.getCast())
+                .set("release_date", updateMovieInfo.getRelease_date());
+        return movieInfoRepository.findAndUpdate(id, updateMovieInfo.getVersion(), update)
+                .doOnNext(this::index);
+
+    }
+
+    // only the fields present in patchMovieInfo are validated and set
+    public Mono<MovieInfo> patchMovieInfo(MovieInfo patchMovieInfo, String id) {
 
+        var update = new Update();
+        var violations = new ArrayList<String>();
+        patchField(patchMovieInfo, "name", patchMovieInfo.getName(), update, violations);
+        patchField(patchMovieInfo, "year", patchMovieInfo.getYear(), update, violations);
+        patchField(patchMovieInfo, "cast", patchMovieInfo.getCast(), update, violations);
+        patchField(patchMovieInfo, "release_date", patchMovieInfo.getRelease_date(), update, violations);
+        if (!violations.isEmpty()) {
+            return Mono.error(new MovieInfoDataException(violations.stream().sorted().collect(Collectors.joining(","))));
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return Mono.error(new MovieInfoDataException("Nothing to update, pass at least one of name, year, cast, release_date"));
+        }
+        return movieInfoRepository.findAndUpdate(id, patchMovieInfo.getVersion(), update)
+                .doOnNext(this::index);
+
+    }
+
+    private void patchField(MovieInfo patchMovieInfo, String field, Object value, Update update, List<String> violations) {
+        if (value == null) {
+            return;
+        }
+        validator.validateProperty(patchMovieInfo, field)
+                .forEach(violation -> violations.add(violation.getMessage()));
+        update.set(field, value);
     }
 
     public Mono<Void> deleteById(String id) {
 
-        return movieInfoRepository.deleteById(id);
+        return movieInfoRepository.deleteById(id)
+                .doOnSuccess(deleted -> movieInfoSearchIndex.remove(id));
+    }
+
+    public Flux<MovieInfo> getMovieInfoByYear(Integer year, MovieInfoCursor after, int limit, Set<String> fields) {
+        return findPage(where("year").is(year), after, limit, fields);
+    }
+    public Flux<MovieInfo> getMovieInfoByName(String name, MovieInfoCursor after, int limit, Set<String> fields){
+        return findPage(where("name").is(name), after, limit, fields);
+    }
+    public Flux<MovieInfo> getByNameAndYear(Integer year, String name, MovieInfoCursor after, int limit, Set<String> fields){
+        return findPage(where("name").is(name).and("year").is(year), after, limit, fields);
+    }
+
+    private Flux<MovieInfo> find(Query query) {
+        return Deadline.enforce(movieInfoRepository.findWithDeadline(query), "mongo", deadlineExceededCounter);
     }
 
-    public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+    private Flux<MovieInfo> findPage(Criteria criteria, MovieInfoCursor after, int limit, Set<String> fields) {
+        return Deadline.enforce(movieInfoRepository.findPage(criteria, after, limit, fields), "mongo", deadlineExceededCounter);
     }
-    public Flux<MovieInfo> getMovieInfoByName(String name){
-        return movieInfoRepository.findByName(name);
+
+    private void index(MovieInfo movieInfo) {
+        var indexed = new MovieInfo();
+        indexed.setMovieInfoId(movieInfo.getMovieInfoId());
+        indexed.setName(movieInfo.getName());
+        indexed.setYear(movieInfo.getYear());
+        movieInfoSearchIndex.put(movieInfo.getMovieInfoId(), indexed);
     }
-    public Flux<MovieInfo> getByNameAndYear(Integer year, String name){
-        return movieInfoRepository.findByNameAndYear(year, name);
+
+    private static class BulkRecord {
+        private final long line;
+        // null when the line is not a valid movieInfo
+        private final MovieInfo movieInfo;
+        private final String error;
+
+        private BulkRecord(long line, MovieInfo movieInfo, String error) {
+            this.line = line;
+            this.movieInfo = movieInfo;
+            this.error = error;
+        }
     }
 }
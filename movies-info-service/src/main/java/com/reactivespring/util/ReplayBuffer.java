@@ -0,0 +1,211 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the most recent published values, bounded by count and by age, and numbers them with a
+ * monotonically increasing sequence. Subscribers replay what is retained after the sequence they
+ * last saw and then follow new values.
+ */
+public class ReplayBuffer<T> {
+
+    private final ArrayDeque<Event<T>> events = new ArrayDeque<>();
+    private final int maxSize;
+    private final long maxAgeNanos;
+    private final ToLongFunction<T> weigher;
+    private final LongSupplier nanoTime;
+    private long sequence;
+    private long bytes;
+
+    // only wakes subscribers up, the values themselves are always read from the buffer
+    private final Sinks.Many<Long> published = Sinks.many().multicast().directBestEffort();
+
+    private final DistributionSummary replaySummary;
+    private final Counter gapCounter;
+
+    public ReplayBuffer(String name, int maxSize, Duration maxAge, ToLongFunction<T> weigher,
+                        MeterRegistry meterRegistry) {
+        this(name, maxSize, maxAge, weigher, meterRegistry, System::nanoTime);
+    }
+
+    ReplayBuffer(String name, int maxSize, Duration maxAge, ToLongFunction<T> weigher,
+                 MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.maxSize = maxSize;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.weigher = weigher;
+        this.nanoTime = nanoTime;
+        Gauge.builder("stream.buffer.events", this, ReplayBuffer::size)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("stream.buffer.bytes", this, ReplayBuffer::bytes)
+                .tag("name", name)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.replaySummary = DistributionSummary.builder("stream.replay.events")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.gapCounter = Counter.builder("stream.replay.gaps")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public long publish(T value) {
+        return publishAll(List.of(value));
+    }
+
+    // appends all values under one lock and wakes subscribers once, returns the sequence of the last one
+    public long publishAll(List<T> values) {
+        long published;
+        synchronized (this) {
+            if (values.isEmpty()) {
+                return sequence;
+            }
+            var now = nanoTime.getAsLong();
+            for (var value : values) {
+                var event = new Event<>(++sequence, value, now, weigher.applyAsLong(value));
+                events.addLast(event);
+                bytes += event.weight;
+            }
+            published = sequence;
+            expire(now);
+            while (events.size() > maxSize) {
+                bytes -= events.removeFirst().weight;
+            }
+        }
+        this.published.emitNext(published,
+                (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+        return published;
+    }
+
+    /**
+     * Retained events with a sequence greater than {@code afterSequence}, followed by every event
+     * published afterwards. Pass 0 to replay everything that is still retained.
+     */
+    public Flux<Event<T>> events(long afterSequence) {
+        return Flux.defer(() -> {
+            // a sequence from before a restart, everything retained is new to this client
+            var resumeFrom = afterSequence;
+            if (afterSequence > lastSequence()) {
+                gapCounter.increment();
+                resumeFrom = 0;
+            }
+            var cursor = new AtomicLong(resumeFrom);
+            var replayed = new AtomicBoolean();
+            // subscribe to the wake-ups before the first read, so nothing published in between is missed
+            return Flux.merge(published.asFlux(), Mono.just(resumeFrom))
+                    .onBackpressureLatest()
+                    .concatMap(wakeUp -> Flux.defer(() -> {
+                        var batch = readAfter(cursor.get());
+                        if (!replayed.getAndSet(true)) {
+                            replaySummary.record(batch.size());
+                        }
+                        if (!batch.isEmpty()) {
+                            cursor.set(batch.get(batch.size() - 1).sequence);
+                        }
+                        return Flux.fromIterable(batch);
+                    }), 1);
+        });
+    }
+
+    /**
+     * Drops every retained value, for when values were lost before they could be published. The sequence
+     * skips one, so clients resuming from before the reset and clients following the stream see the gap.
+     */
+    public synchronized void reset() {
+        events.clear();
+        bytes = 0;
+        sequence++;
+    }
+
+    public synchronized int size() {
+        return events.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    // sequence of the newest retained value matching the predicate
+    public synchronized OptionalLong sequenceOf(Predicate<T> predicate) {
+        var iterator = events.descendingIterator();
+        while (iterator.hasNext()) {
+            var event = iterator.next();
+            if (predicate.test(event.value)) {
+                return OptionalLong.of(event.sequence);
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    private synchronized List<Event<T>> readAfter(long afterSequence) {
+        expire(nanoTime.getAsLong());
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        // the client resumes from a sequence that has already been dropped, it sees the jump in sequence
+        if (afterSequence > 0 && events.peekFirst().sequence > afterSequence + 1) {
+            gapCounter.increment();
+        }
+        var batch = new ArrayList<Event<T>>();
+        var iterator = events.descendingIterator();
+        while (iterator.hasNext()) {
+            var event = iterator.next();
+            if (event.sequence <= afterSequence) {
+                break;
+            }
+            batch.add(event);
+        }
+        Collections.reverse(batch);
+        return batch;
+    }
+
+    private void expire(long now) {
+        while (!events.isEmpty() && now - events.peekFirst().publishedAt >= maxAgeNanos) {
+            bytes -= events.removeFirst().weight;
+        }
+    }
+
+    public static class Event<T> {
+        private final long sequence;
+        private final T value;
+        private final long publishedAt;
+        private final long weight;
+
+        private Event(long sequence, T value, long publishedAt, long weight) {
+            this.sequence = sequence;
+            this.value = value;
+            this.publishedAt = publishedAt;
+            this.weight = weight;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory word index over a short text per value, e.g. a movie name, for search-as-you-type.
+ * Every word of the query has to match a word of the text: exactly, as a prefix (the last query word only,
+ * it is usually still being typed) or within a small edit distance, found through a trigram index of the words.
+ * Results are ranked by how well they match, then by the shorter text.
+ * The work per search is bounded whatever the query: a query word expands to at most MAX_EXPANSIONS prefix and
+ * MAX_FUZZY_CANDIDATES fuzzy words, the ids of every word are kept in ranking order so the best come first, and
+ * ids are only read from the query word matching the fewest of them until nothing left can rank higher,
+ * at most MAX_SCANNED of them.
+ */
+public class SearchIndex<T> {
+
+    private static final double EXACT = 1.0;
+    private static final double PREFIX = 0.8;
+    private static final double FUZZY = 0.5;
+
+    private static final int MAX_EXPANSIONS = 50;
+    private static final int MAX_FUZZY_CANDIDATES = 200;
+    private static final int MAX_SCANNED = 10_000;
+    // prefixes up to this length match a large part of the words, their shortest completions are kept ready
+    private static final int INDEXED_PREFIX_LENGTH = 3;
+
+    private static final Comparator<String> SHORTEST_FIRST = Comparator.comparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final Function<T, String> text;
+
+    // id -> indexed value, word -> entries in ranking order, short prefix -> words, trigram -> words
+    private final Map<String, Entry<T>> entries = new HashMap<>();
+    private final TreeMap<String, TreeSet<Entry<T>>> words = new TreeMap<>();
+    private final Map<String, TreeSet<String>> completions = new HashMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SearchIndex(String name, Function<T, String> text, MeterRegistry meterRegistry) {
+        this.text = text;
+        Gauge.builder("search.index.entries", this, SearchIndex::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public void put(String id, T value) {
+        var valueText = text.apply(value);
+        var entry = new Entry<>(id, value, valueText, tokenize(valueText));
+        lock.writeLock().lock();
+        try {
+            removeEntry(id);
+            entries.put(id, entry);
+            for (var word : entry.words) {
+                words.computeIfAbsent(word, w -> {
+                    trigramsOf(w).forEach(trigram -> trigrams.computeIfAbsent(trigram, t -> new HashSet<>()).add(w));
+                    shortPrefixesOf(w).forEach(prefix ->
+                            completions.computeIfAbsent(prefix, p -> new TreeSet<>(SHORTEST_FIRST)).add(w));
+                    return new TreeSet<>(Entry.RANKING);
+                }).add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            words.clear();
+            completions.clear();
+            trigrams.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<T> search(String query, int limit) {
+        var queryWords = tokenize(query);
+        if (queryWords.isEmpty() || limit < 1) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            var matches = new ArrayList<Map<String, Double>>(queryWords.size());
+            var driver = 0;
+            var driverIds = Long.MAX_VALUE;
+            for (int i = 0; i < queryWords.size(); i++) {
+                var wordScores = match(queryWords.get(i), i == queryWords.size() - 1);
+                if (wordScores.isEmpty()) {
+                    return List.of();
+                }
+                matches.add(wordScores);
+                var ids = wordScores.keySet().stream().mapToLong(word -> words.get(word).size()).sum();
+                if (ids < driverIds) {
+                    driver = i;
+                    driverIds = ids;
+                }
+            }
+            return topK(matches, driver, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // word of the index -> score for this query word
+    private Map<String, Double> match(String queryWord, boolean prefix) {
+        var wordScores = new HashMap<String, Double>();
+        if (words.containsKey(queryWord)) {
+            wordScores.put(queryWord, EXACT);
+        }
+        if (prefix) {
+            // the shortest completions are the closest to what was typed
+            completionsOf(queryWord).forEach(word -> wordScores.merge(word, PREFIX, Math::max));
+        }
+        var maxEdits = maxEdits(queryWord);
+        if (maxEdits > 0) {
+            for (var candidate : fuzzyCandidates(queryWord)) {
+                // a prefix is compared against the start of the word only
+                var compared = prefix && candidate.length() > queryWord.length()
+                        ? candidate.substring(0, queryWord.length())
+                        : candidate;
+                var edits = editDistance(queryWord, compared, maxEdits);
+                if (edits <= maxEdits) {
+                    wordScores.merge(candidate, FUZZY / (1 + edits), Math::max);
+                }
+            }
+        }
+        return wordScores;
+    }
+
+    private List<String> completionsOf(String prefix) {
+        if (prefix.length() <= INDEXED_PREFIX_LENGTH) {
+            return completions.getOrDefault(prefix, new TreeSet<>()).stream()
+                    .filter(word -> !word.equals(prefix))
+                    .limit(MAX_EXPANSIONS)
+                    .collect(Collectors.toList());
+        }
+        // past the indexed prefixes few words are left to go through
+        return words.subMap(prefix, false, prefix + Character.MAX_VALUE, false).keySet().stream()
+                .sorted(SHORTEST_FIRST)
+                .limit(MAX_EXPANSIONS)
+                .collect(Collectors.toList());
+    }
+
+    // the words sharing the most trigrams with the query word
+    private List<String> fuzzyCandidates(String queryWord) {
+        var shared = new HashMap<String, Integer>();
+        for (var trigram : trigramsOf(queryWord)) {
+            trigrams.getOrDefault(trigram, Set.of()).forEach(word -> shared.merge(word, 1, Integer::sum));
+        }
+        return shared.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(MAX_FUZZY_CANDIDATES)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the ids of the driving query word best first, by score and then ranking, and scores each against
+     * the other query words. An id not read yet scores at most what the driving word gives the next one plus
+     * an exact match on every other word, once that cannot beat the worst of the best limit there is no need
+     * to read further.
+     */
+    private List<T> topK(List<Map<String, Double>> matches, int driver, int limit) {
+        var postings = new PriorityQueue<Posting<T>>();
+        matches.get(driver).forEach((word, score) -> postings.add(new Posting<>(score, words.get(word).iterator())));
+        var maxOthers = (matches.size() - 1) * EXACT;
+        // min-heap of the best limit results, the worst of them on top
+        var best = new PriorityQueue<>(Scored.<T>bestFirst().reversed());
+        var seen = new HashSet<String>();
+        while (!postings.isEmpty() && seen.size() < MAX_SCANNED) {
+            var posting = postings.poll();
+            var entry = posting.head;
+            if (best.size() == limit
+                    && Scored.<T>bestFirst().compare(best.peek(), new Scored<>(entry, posting.score + maxOthers)) <= 0) {
+                break;
+            }
+            if (posting.advance()) {
+                postings.add(posting);
+            }
+            // read first under the word that gives it the highest score
+            if (!seen.add(entry.id)) {
+                continue;
+            }
+            var total = posting.score;
+            for (int i = 0; i < matches.size() && total > 0; i++) {
+                if (i != driver) {
+                    var wordScore = bestScore(entry, matches.get(i));
+                    // every query word has to match
+                    total = wordScore > 0 ? total + wordScore : 0;
+                }
+            }
+            if (total > 0) {
+                best.add(new Scored<>(entry, total));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        var results = new ArrayList<T>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll().entry.value);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private static double bestScore(Entry<?> entry, Map<String, Double> wordScores) {
+        var best = 0.0;
+        for (var word : entry.words) {
+            best = Math.max(best, wordScores.getOrDefault(word, 0.0));
+        }
+        return best;
+    }
+
+    private void removeEntry(String id) {
+        var entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (var word : entry.words) {
+            var wordEntries = words.get(word);
+            wordEntries.remove(entry);
+            if (wordEntries.isEmpty()) {
+                words.remove(word);
+                for (var trigram : trigramsOf(word)) {
+                    var trigramWords = trigrams.get(trigram);
+                    trigramWords.remove(word);
+                    if (trigramWords.isEmpty()) {
+                        trigrams.remove(trigram);
+                    }
+                }
+                for (var prefix : shortPrefixesOf(word)) {
+                    var prefixWords = completions.get(prefix);
+                    prefixWords.remove(word);
+                    if (prefixWords.isEmpty()) {
+                        completions.remove(prefix);
+                    }
+                }
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        // "Amélie" is found by "amelie"
+        var normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase();
+        return Arrays.stream(normalized.split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // short words are matched exactly, one typo is allowed from 4 letters on and two from 8
+    private static int maxEdits(String word) {
+        return word.length() < 4 ? 0 : word.length() < 8 ? 1 : 2;
+    }
+
+    private static List<String> shortPrefixesOf(String word) {
+        var prefixes = new ArrayList<String>(INDEXED_PREFIX_LENGTH);
+        for (int length = 1; length <= Math.min(INDEXED_PREFIX_LENGTH, word.length()); length++) {
+            prefixes.add(word.substring(0, length));
+        }
+        return prefixes;
+    }
+
+    private static Set<String> trigramsOf(String word) {
+        var padded = "$" + word + "$";
+        var result = new HashSet<String>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    // edit distance counting a swap of two neighbouring letters as one edit, anything above max is reported as max + 1
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        var beforePrevious = new int[b.length() + 1];
+        var previous = new int[b.length() + 1];
+        var current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            var rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                var cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            var recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    private static class Entry<T> {
+        // the shorter text first, the rest only keeps entries with the same text apart
+        private static final Comparator<Entry<?>> RANKING = Comparator.<Entry<?>>comparingInt(entry -> entry.text.length())
+                .thenComparing(entry -> entry.text)
+                .thenComparing(entry -> entry.id);
+
+        private final String id;
+        private final T value;
+        private final String text;
+        private final List<String> words;
+
+        private Entry(String id, T value, String text, List<String> words) {
+            this.id = id;
+            this.value = value;
+            this.text = text;
+            this.words = words;
+        }
+    }
+
+    private static class Scored<T> {
+        private final Entry<T> entry;
+        private final double score;
+
+        private Scored(Entry<T> entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        private static <T> Comparator<Scored<T>> bestFirst() {
+            return Comparator.<Scored<T>>comparingDouble(scored -> -scored.score)
+                    .thenComparing(scored -> scored.entry, Entry.RANKING);
+        }
+    }
+
+    // the entries of one matching word, read in ranking order
+    private static class Posting<T> implements Comparable<Posting<T>> {
+        private final double score;
+        private final Iterator<Entry<T>> remaining;
+        private Entry<T> head;
+
+        private Posting(double score, Iterator<Entry<T>> remaining) {
+            this.score = score;
+            this.remaining = remaining;
+            this.head = remaining.next();
+        }
+
+        private boolean advance() {
+            if (!remaining.hasNext()) {
+                return false;
+            }
+            head = remaining.next();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Posting<T> other) {
+            var byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : Entry.RANKING.compare(head, other.head);
+        }
+    }
+}
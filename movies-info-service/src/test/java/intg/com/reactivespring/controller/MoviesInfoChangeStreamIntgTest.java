@@ -0,0 +1,139 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.ReplayBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Change streams need a replica set, which the embedded Mongo of the other tests is not. Runs against
+ * the single-node replica set in MONGODB_REPLICA_SET_URI, see the README.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "stream.source=change-stream",
+        "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration"
+})
+@AutoConfigureWebTestClient
+@EnabledIfEnvironmentVariable(named = "MONGODB_REPLICA_SET_URI", matches = ".+")
+class MoviesInfoChangeStreamIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer;
+
+    String MOVIES_INFO_URL = "/v1/movieinfos";
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> System.getenv("MONGODB_REPLICA_SET_URI"));
+    }
+
+    // the cursor is opened asynchronously after startup, wait until a fresh probe write comes through it,
+    // by then every earlier change (e.g. the previous tearDown) has been published too
+    @BeforeEach
+    void awaitChangeStream() {
+        var probeId = "probe-" + System.nanoTime();
+        var probe = new MovieInfo(probeId, "Probe",
+                2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+        // written again until it shows up, a write from before the cursor opened is never seen
+        Flux.interval(Duration.ofMillis(200))
+                .concatMap(tick -> movieInfoRepository.save(probe))
+                .filter(saved -> movieInfoReplayBuffer.sequenceOf(change ->
+                        probeId.equals(change.getMovieInfo().getMovieInfoId())).isPresent())
+                .blockFirst(Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void changeStream_insertUpdateDelete() {
+        var moviesInfoStreamFlux = streamAfter(null);
+
+        StepVerifier.create(moviesInfoStreamFlux)
+                .then(this::insertUpdateDelete)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChange.OperationType.INSERT, event.getOperationType());
+                    assertEquals("Batman Begins", event.getMovieInfo().getName());
+                    assertNotNull(event.getResumeToken());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChange.OperationType.UPDATE, event.getOperationType());
+                    assertEquals(2006, event.getMovieInfo().getYear());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChange.OperationType.DELETE, event.getOperationType());
+                    assertEquals("bb", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void changeStream_resumeToken() {
+        var insertEvent = streamAfter(null)
+                .doOnSubscribe(subscription -> insertUpdateDelete())
+                .filter(event -> event.getOperationType() == MovieInfoChange.OperationType.INSERT)
+                .blockFirst(Duration.ofSeconds(10));
+        assertNotNull(insertEvent);
+
+        StepVerifier.create(streamAfter(insertEvent.getResumeToken()))
+                .assertNext(event -> assertEquals(MovieInfoChange.OperationType.UPDATE, event.getOperationType()))
+                .assertNext(event -> assertEquals(MovieInfoChange.OperationType.DELETE, event.getOperationType()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    // only what happens from now on, or what happened after the change with resumeToken
+    private Flux<MovieInfoEvent> streamAfter(String resumeToken) {
+        var uri = resumeToken == null ? MOVIES_INFO_URL + "/stream?afterSequence=" + movieInfoReplayBuffer.lastSequence()
+                : MOVIES_INFO_URL + "/stream?resumeToken=" + resumeToken;
+        return webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+    }
+
+    private void insertUpdateDelete() {
+        var movieInfo = new MovieInfo("bb", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        movieInfoRepository.save(movieInfo)
+                .flatMap(saved -> {
+                    saved.setYear(2006);
+                    return movieInfoRepository.save(saved);
+                })
+                .then(movieInfoRepository.deleteById("bb"))
+                .block();
+    }
+}
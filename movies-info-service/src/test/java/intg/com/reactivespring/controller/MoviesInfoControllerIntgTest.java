@@ -1,13 +1,21 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.IdempotencyStore;
+import com.reactivespring.util.ReplayBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -15,6 +23,7 @@ import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -28,6 +37,12 @@ class MoviesInfoControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer;
+
     String MOVIES_INFO_URL = "/v1/movieinfos";
     @BeforeEach
     void setUp() {
@@ -63,6 +78,42 @@ class MoviesInfoControllerIntgTest {
                     assert savedMovieInfo.getMovieInfoId() != null;
                 });
     }
+    @Test
+    void addMovieInfo_idempotencyKey(){
+        var movieInfo = new MovieInfo(null, "Batman Begins2",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        var saved = webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .header(IdempotencyStore.HEADER, "movieinfo-batman-begins2")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectHeader()
+                .valueEquals(IdempotencyStore.REPLAYED_HEADER, "false")
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseBody();
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .header(IdempotencyStore.HEADER, "movieinfo-batman-begins2")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectHeader()
+                .valueEquals(IdempotencyStore.REPLAYED_HEADER, "true")
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult ->
+                        assertEquals(saved.getMovieInfoId(), movieInfoEntityExchangeResult.getResponseBody().getMovieInfoId()));
+
+        assertEquals(4, movieInfoRepository.count().block());
+    }
+
     @Test
     void getMovieInfo(){
         webTestClient
@@ -76,6 +127,8 @@ class MoviesInfoControllerIntgTest {
     }
     @Test
     void getMovieInfoStream(){
+        // updates and deletes of the other tests are on the stream as well
+        var afterSequence = movieInfoReplayBuffer.lastSequence();
         var movieInfo = new MovieInfo(null, "Batman Begins1",
                 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
 
@@ -95,7 +148,7 @@ class MoviesInfoControllerIntgTest {
 
         var moviesInfoStreamFlux = webTestClient
                 .get()
-                .uri(MOVIES_INFO_URL + "/stream")
+                .uri(MOVIES_INFO_URL + "/stream?afterSequence={afterSequence}", afterSequence)
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
@@ -111,6 +164,89 @@ class MoviesInfoControllerIntgTest {
                 .verify();
     }
 
+    @Test
+    void getMovieInfoStream_resumeAfterSequence(){
+        var names = List.of("Batman Begins2", "The Dark Knight2", "Dark Knight Rises2");
+        names.forEach(name -> webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(new MovieInfo(null, name,
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")))
+                .exchange()
+                .expectStatus()
+                .isCreated());
+
+        var firstSequence = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/stream")
+                .exchange()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody()
+                .filter(event -> event.getMovieInfo().getName().equals("Batman Begins2"))
+                .blockFirst()
+                .getSequence();
+
+        var resumedFlux = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/stream")
+                .header("Last-Event-ID", String.valueOf(firstSequence))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(resumedFlux)
+                .assertNext(event -> {
+                    assertEquals(firstSequence + 1, event.getSequence());
+                    assertEquals("The Dark Knight2", event.getMovieInfo().getName());
+                })
+                .assertNext(event -> assertEquals("Dark Knight Rises2", event.getMovieInfo().getName()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getMovieInfoStream_updateAndDelete(){
+        var afterSequence = movieInfoReplayBuffer.lastSequence();
+        var updatedMovieInfo = new MovieInfo("abc", "Dark Knight Rises 1",
+                2013, List.of("Christian Bale1", "Tom Hardy1"), LocalDate.parse("2012-07-20"));
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .bodyValue(updatedMovieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+        webTestClient
+                .delete()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        var moviesInfoStreamFlux = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/stream?afterSequence={afterSequence}", afterSequence)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(moviesInfoStreamFlux)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChange.OperationType.UPDATE, event.getOperationType());
+                    assertEquals("Dark Knight Rises 1", event.getMovieInfo().getName());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChange.OperationType.DELETE, event.getOperationType());
+                    assertEquals("abc", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify();
+    }
+
     @Test
     void getMovieInfoById(){
         var movieInfoId = "abc";
@@ -154,6 +290,277 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(1);
     }
 
+    @Test
+    void getMovieInfoByIds(){
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URL)
+                .queryParam("ids", "abc,def")
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movieInfos = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(movieInfos);
+                    assertEquals("Dark Knight Rises", movieInfos.get(0).getName());
+                });
+    }
+
+    @Test
+    void getMovieInfo_paged(){
+        var firstPage = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .exists(MoviesInfoController.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult();
+
+        var nextCursor = firstPage.getResponseHeaders().getFirst(MoviesInfoController.NEXT_CURSOR_HEADER);
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2&after={after}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(MoviesInfoController.NEXT_CURSOR_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movieInfos = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(movieInfos);
+                    assertFalse(firstPage.getResponseBody().contains(movieInfos.get(0)));
+                });
+    }
+
+    @Test
+    void getMovieInfo_pagedByYear(){
+        var firstPage = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=1&orderBy=year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .returnResult();
+        assertEquals(2005, firstPage.getResponseBody().get(0).getYear());
+
+        var nextCursor = firstPage.getResponseHeaders().getFirst(MoviesInfoController.NEXT_CURSOR_HEADER);
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=5&after={after}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .consumeWith(listEntityExchangeResult -> {
+                    var movieInfos = listEntityExchangeResult.getResponseBody();
+                    assertNotNull(movieInfos);
+                    assertEquals(2008, movieInfos.get(0).getYear());
+                    assertEquals(2012, movieInfos.get(1).getYear());
+                });
+    }
+
+    @Test
+    void getMovieInfo_invalidPageRequest(){
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?after=not*a*cursor")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=0")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?orderBy=name")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getMovieInfo_withFields(){
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?ids=abc&fields=name,year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].movieInfoId").isEqualTo("abc")
+                .jsonPath("$[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$[0].year").isEqualTo(2012)
+                .jsonPath("$[0].cast").doesNotExist()
+                .jsonPath("$[0].release_date").doesNotExist();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name,director")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void searchMovieInfos(){
+        var movieInfo = new MovieInfo(null, "Interstellar",
+                2014, List.of("Matthew McConaughey", "Anne Hathaway"), LocalDate.parse("2014-11-07"));
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/search?q={q}", "intersteller")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].name").isEqualTo("Interstellar")
+                .jsonPath("$[0].year").isEqualTo(2014)
+                .jsonPath("$[0].cast").doesNotExist();
+    }
+
+    @Test
+    void addMovieInfos_bulk(){
+        var body = String.join("\n",
+                "{\"name\": \"Interstellar\", \"year\": 2014, \"cast\": [\"Matthew McConaughey\"], \"release_date\": \"2014-11-07\"}",
+                "",
+                "{\"name\": \"Inception\", \"year\": -1, \"cast\": [\"Leonardo DiCaprio\"], \"release_date\": \"2010-07-16\"}",
+                "{\"name\": \"Tenet\"",
+                "{\"movieInfoId\": \"abc\", \"name\": \"Dark Knight Rises\", \"year\": 2012, \"cast\": [\"Tom Hardy\"], \"release_date\": \"2012-07-20\"}");
+
+        var results = webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoBulkResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> {
+                    assertEquals(1, result.getLine());
+                    assertEquals(MovieInfoBulkResult.Status.CREATED, result.getStatus());
+                    assertNotNull(result.getMovieInfoId());
+                })
+                .assertNext(result -> {
+                    assertEquals(3, result.getLine());
+                    assertEquals(MovieInfoBulkResult.Status.INVALID, result.getStatus());
+                    assertEquals("movieInfo.year must be a positive value", result.getError());
+                })
+                .assertNext(result -> {
+                    assertEquals(4, result.getLine());
+                    assertEquals(MovieInfoBulkResult.Status.INVALID, result.getStatus());
+                })
+                .assertNext(result -> {
+                    // already inserted in setUp
+                    assertEquals(5, result.getLine());
+                    assertEquals(MovieInfoBulkResult.Status.FAILED, result.getStatus());
+                    assertEquals("abc", result.getMovieInfoId());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoRepository.findByName("Interstellar"))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void addMovieInfos_bulkThenStaleUpdate(){
+        var results = webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\": \"Interstellar\", \"year\": 2014, \"cast\": [\"Matthew McConaughey\"], \"release_date\": \"2014-11-07\"}")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoBulkResult.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        var id = results.get(0).getMovieInfoId();
+        var imported = movieInfoRepository.findById(id).block();
+        assertEquals(0L, imported.getVersion());
+
+        imported.setName("Interstellar 1");
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(imported)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        // a second client that read the imported movieinfo before the first update
+        imported.setName("Interstellar 2");
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(imported)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(409);
+    }
+
+    @Test
+    void getMovieInfoById_withDeadline(){
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .header(Deadline.HEADER, "2000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var movieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assertNotNull(movieInfo);
+                    assertEquals("Dark Knight Rises", movieInfo.getName());
+                });
+    }
+
+    @Test
+    void getMovieInfo_deadlineExceeded(){
+        var exceededBefore = meterRegistry.counter("deadline.exceeded", "stage", "mongo").count();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL)
+                .header(Deadline.HEADER, "0")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(504);
+
+        assertEquals(exceededBefore + 1, meterRegistry.counter("deadline.exceeded", "stage", "mongo").count());
+    }
+
     @Test
     void updateMovieInfo() {
         var id = "abc";
@@ -174,6 +581,64 @@ class MoviesInfoControllerIntgTest {
                     assertEquals("Dark Knight Rises 1", movieInfo.getName());
                 });
     }
+    @Test
+    void patchMovieInfo() {
+        var id = "abc";
+        var version = movieInfoRepository.findById(id).block().getVersion();
+        var patch = new MovieInfo();
+        patch.setName("Dark Knight Rises 2");
+        patch.setVersion(version);
+
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var movieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assertNotNull(movieInfo);
+                    assertEquals("Dark Knight Rises 2", movieInfo.getName());
+                    assertEquals(2012, movieInfo.getYear());
+                    assertEquals(version + 1, movieInfo.getVersion());
+                });
+
+        // still at the version read before the first patch
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(409);
+    }
+
+    @Test
+    void patchMovieInfo_invalid() {
+        var patch = new MovieInfo();
+        patch.setYear(-1);
+
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfo.year must be a positive value");
+
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", "def")
+                .bodyValue(Map.of("name", "Dark Knight Rises 2"))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void deleteMovieInfo() {
         var id = "abc";
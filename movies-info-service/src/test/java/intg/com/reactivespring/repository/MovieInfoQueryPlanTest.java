@@ -0,0 +1,89 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs every filtered MovieInfo query with the profiler on and fails on any query that was answered by a collection scan.
+ */
+@DataMongoTest
+@ActiveProfiles("test")
+class MovieInfoQueryPlanTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    QueryPlanProfiler queryPlanProfiler;
+
+    @BeforeEach
+    void setUp() {
+        new MongoIndexInitializer(reactiveMongoTemplate, List.of(MovieInfo.class)).ensureIndexes().blockLast();
+        var movieinfos = List.of(new MovieInfo(null, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+        movieInfoRepository.saveAll(movieinfos).blockLast();
+        queryPlanProfiler = new QueryPlanProfiler(reactiveMongoTemplate);
+        queryPlanProfiler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        queryPlanProfiler.stop();
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void derivedQueriesUseAnIndex() {
+        movieInfoRepository.findByYear(2005).blockLast();
+        movieInfoRepository.findByName("Batman Begins").blockLast();
+        movieInfoRepository.findByNameAndYear("Batman Begins", 2005).blockLast();
+
+        queryPlanProfiler.assertNoCollectionScan(MovieInfo.class);
+    }
+
+    @Test
+    void pagedQueriesUseAnIndex() {
+        var last = movieInfoRepository.findById("abc").block();
+        var criterias = List.of(new Criteria(),
+                where("year").is(2005),
+                where("name").is("Batman Begins"),
+                where("name").is("Batman Begins").and("year").is(2005));
+
+        for (var criteria : criterias) {
+            for (var orderBy : MovieInfoCursor.OrderBy.values()) {
+                var first = MovieInfoCursor.first(orderBy);
+                movieInfoRepository.findPage(criteria, first, 2, List.of()).blockLast();
+                movieInfoRepository.findPage(criteria, first.next(last), 2, List.of("name")).blockLast();
+            }
+        }
+
+        queryPlanProfiler.assertNoCollectionScan(MovieInfo.class);
+    }
+
+    @Test
+    void lookupsByIdUseAnIndex() {
+        movieInfoRepository.findOneWithDeadline(query(where("movieInfoId").is("abc"))).block();
+        movieInfoRepository.findWithDeadline(query(where("movieInfoId").in("abc", "def"))).blockLast();
+
+        queryPlanProfiler.assertNoCollectionScan(MovieInfo.class);
+    }
+}
@@ -1,18 +1,29 @@
 package com.reactivespring.repository;
 
+import com.mongodb.ExplainVerbosity;
 import com.reactivespring.domain.MovieInfo;
+import org.bson.Document;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 @DataMongoTest
@@ -22,6 +33,9 @@ class MovieInfoRepositoryTest {
     @Autowired
     MovieInfoRepository movieInfoRepository;
 
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
     @BeforeEach
     void setUp() {
         var movieinfos = List.of(new MovieInfo(null, "Batman Begins",
@@ -69,4 +83,70 @@ class MovieInfoRepositoryTest {
                 })
                 .verifyComplete();
     }
-}
\ No newline at end of file
+
+    @Test
+    void findPage() {
+
+        var firstPage = movieInfoRepository.findPage(new Criteria(), MovieInfoCursor.first(MovieInfoCursor.OrderBy.YEAR), 2, List.of())
+                .collectList().block();
+        assertEquals(2, firstPage.size());
+
+        var cursor = MovieInfoCursor.first(MovieInfoCursor.OrderBy.YEAR).next(firstPage.get(1));
+        StepVerifier.create(movieInfoRepository.findPage(new Criteria(), cursor, 2, List.of()))
+                .assertNext(movieInfo -> {
+                    assertEquals("Dark Knight Rises", movieInfo.getName());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findPage_withFields() {
+
+        StepVerifier.create(movieInfoRepository.findPage(new Criteria(), MovieInfoCursor.first(MovieInfoCursor.OrderBy.YEAR), 1, List.of("name")))
+                .assertNext(movieInfo -> {
+                    assertEquals("Batman Begins", movieInfo.getName());
+                    // the year is needed for the next cursor
+                    assertEquals(2005, movieInfo.getYear());
+                    assertNull(movieInfo.getCast());
+                    assertNull(movieInfo.getRelease_date());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findPage_deepPageExaminesOnlyThePage() {
+        var movieInfos = IntStream.range(0, 10_000)
+                .mapToObj(i -> new MovieInfo(null, "Movie " + i, 2000 + i % 20,
+                        List.of("Christian Bale"), LocalDate.parse("2005-06-15")))
+                .collect(Collectors.toList());
+        reactiveMongoTemplate.insertAll(movieInfos).blockLast();
+
+        var limit = 10;
+        var skip = 9_000;
+        var lastOfPreviousPage = movieInfoRepository.findPage(new Criteria(), MovieInfoCursor.first(MovieInfoCursor.OrderBy.ID), skip, List.of())
+                .last().block();
+        var cursor = MovieInfoCursor.first(MovieInfoCursor.OrderBy.ID).next(lastOfPreviousPage);
+
+        var keysetStats = explain(Query.query(cursor.criteria()).with(cursor.sort()), 0, limit);
+        var offsetStats = explain(new Query().with(cursor.sort()), skip, limit);
+
+        // skip/limit walks every skipped entry, the keyset seeks straight to the page
+        assertTrue(keysetStats.getInteger("totalKeysExamined") <= limit + 1, keysetStats.toJson());
+        assertTrue(offsetStats.getInteger("totalKeysExamined") >= skip, offsetStats.toJson());
+    }
+
+    private Document explain(Query query, int skip, int limit) {
+        var queryMapper = new QueryMapper(reactiveMongoTemplate.getConverter());
+        var entity = reactiveMongoTemplate.getConverter().getMappingContext().getPersistentEntity(MovieInfo.class);
+        var filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+        var sort = queryMapper.getMappedSort(query.getSortObject(), entity);
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.find(filter)
+                        .sort(sort)
+                        .skip(skip)
+                        .limit(limit)
+                        .explain(ExplainVerbosity.EXECUTION_STATS)))
+                .map(explanation -> explanation.get("executionStats", Document.class))
+                .block();
+    }
+}
@@ -1,21 +1,34 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.repository.MovieInfoCursor;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.util.IdempotencyStore;
+import com.reactivespring.util.ReplayBuffer;
+import com.reactivespring.util.StreamSubscribers;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.when;
 
@@ -30,6 +43,15 @@ class MoviesInfoControllerUnitTest {
     @MockBean
     private MoviesInfoService moviesInfoService;
 
+    @MockBean
+    private ReplayBuffer<MovieInfoChange> movieInfoReplayBuffer;
+
+    @MockBean
+    private StreamSubscribers<MovieInfoEvent> movieInfoSubscribers;
+
+    @MockBean
+    private IdempotencyStore<MovieInfo> movieInfoIdempotencyStore;
+
     String MOVIES_INFO_URL = "/v1/movieinfos";
 
     @Test
@@ -40,7 +62,7 @@ class MoviesInfoControllerUnitTest {
                         2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
                 new MovieInfo("abc", "Dark Knight Rises",
                         2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
-        when(moviesInfoService.getAllMovieInfos()).thenReturn(Flux.fromIterable(movieinfos));
+        when(moviesInfoService.getAllMovieInfos(isA(MovieInfoCursor.class), anyInt(), anySet())).thenReturn(Flux.fromIterable(movieinfos));
 
         webTestClient
                 .get()
@@ -51,6 +73,33 @@ class MoviesInfoControllerUnitTest {
                 .expectBodyList(MovieInfo.class)
                 .hasSize(2);
     }
+    @Test
+    void streamMovieInfos_unknownResumeToken(){
+        when(movieInfoReplayBuffer.sequenceOf(any())).thenReturn(OptionalLong.empty());
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/stream?resumeToken=expired")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GONE);
+    }
+    @Test
+    void getMovieInfosByIds_tooManyIds(){
+        var ids = IntStream.rangeClosed(1, 501)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?ids={ids}", ids)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("At most 500 ids per request");
+    }
+
     @Test
     void getMovieInfoById(){
         var id = "abc";
@@ -0,0 +1,70 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChange;
+import com.reactivespring.util.ReplayBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MovieInfoChangeFeedTest {
+
+    ReactiveMongoTemplate reactiveMongoTemplate;
+    MoviesInfoService moviesInfoService;
+    ReplayBuffer<MovieInfoChange> replayBuffer;
+    MovieInfoChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        reactiveMongoTemplate = mock(ReactiveMongoTemplate.class, RETURNS_DEEP_STUBS);
+        moviesInfoService = mock(MoviesInfoService.class);
+        replayBuffer = new ReplayBuffer<>("movieinfos", 10, Duration.ofMinutes(1), change -> 1L,
+                new SimpleMeterRegistry());
+        changeFeed = new MovieInfoChangeFeed(reactiveMongoTemplate, replayBuffer, moviesInfoService);
+    }
+
+    @Test
+    void lostHistoryResetsTheReplayAndReloadsTheSearchIndex() {
+        replayBuffer.publish(MovieInfoChange.deleted("abc", "token"));
+        when(reactiveMongoTemplate.changeStream(MovieInfo.class).withOptions(any()).watchCollection(MovieInfo.class).listen())
+                .thenReturn(Flux.error(historyLost()), Flux.never());
+        when(reactiveMongoTemplate.executeCommand(any(Document.class)))
+                .thenReturn(Mono.just(new Document("operationTime", new BsonTimestamp(1, 1))));
+        when(moviesInfoService.loadSearchIndex()).thenReturn(Mono.just(3));
+
+        changeFeed.start();
+        changeFeed.stop();
+
+        assertEquals(0, replayBuffer.size());
+        // the skipped sequence tells resuming clients about the gap
+        assertEquals(2, replayBuffer.lastSequence());
+        verify(moviesInfoService).loadSearchIndex();
+    }
+
+    private static MongoCommandException historyLost() {
+        var reply = new BsonDocument("ok", new BsonDouble(0))
+                .append("code", new BsonInt32(286))
+                .append("errmsg", new BsonString("Resume of change stream was not possible"));
+        return new MongoCommandException(reply, new ServerAddress());
+    }
+}
@@ -0,0 +1,149 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReplayBufferTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicLong now;
+    ReplayBuffer<String> replayBuffer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong();
+        replayBuffer = new ReplayBuffer<>("movieinfos", 3, Duration.ofMinutes(1), String::length,
+                meterRegistry, now::get);
+    }
+
+    @Test
+    void sequencesIncrease() {
+        assertEquals(1, replayBuffer.publish("Batman Begins"));
+        assertEquals(2, replayBuffer.publish("The Dark Knight"));
+        assertEquals(2, replayBuffer.lastSequence());
+    }
+
+    @Test
+    void resumesAfterSequence() {
+        replayBuffer.publish("Batman Begins");
+        replayBuffer.publish("The Dark Knight");
+        replayBuffer.publish("Dark Knight Rises");
+
+        StepVerifier.create(replayBuffer.events(1).map(ReplayBuffer.Event::getValue))
+                .expectNext("The Dark Knight", "Dark Knight Rises")
+                .thenCancel()
+                .verify();
+
+        assertEquals(2.0, meterRegistry.get("stream.replay.events").summary().totalAmount());
+    }
+
+    @Test
+    void followsLiveEventsAfterReplay() {
+        replayBuffer.publish("Batman Begins");
+
+        StepVerifier.create(replayBuffer.events(0).map(ReplayBuffer.Event::getValue))
+                .expectNext("Batman Begins")
+                .then(() -> replayBuffer.publish("The Dark Knight"))
+                .expectNext("The Dark Knight")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void publishesAllInOrder() {
+        assertEquals(2, replayBuffer.publishAll(List.of("Batman Begins", "The Dark Knight")));
+        assertEquals(2, replayBuffer.publishAll(List.of()));
+
+        StepVerifier.create(replayBuffer.events(0).map(ReplayBuffer.Event::getSequence))
+                .expectNext(1L, 2L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void boundedBySize() {
+        replayBuffer.publish("Batman Begins");
+        replayBuffer.publish("The Dark Knight");
+        replayBuffer.publish("Dark Knight Rises");
+        replayBuffer.publish("Batman Begins1");
+
+        assertEquals(3, replayBuffer.size());
+        assertEquals("The Dark Knight".length() + "Dark Knight Rises".length() + "Batman Begins1".length(),
+                meterRegistry.get("stream.buffer.bytes").gauge().value());
+
+        // sequence 1 is gone, a client that saw nothing yet starts at 2
+        StepVerifier.create(replayBuffer.events(0).map(ReplayBuffer.Event::getSequence))
+                .expectNext(2L, 3L, 4L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resumingAfterDroppedEventsCountsGap() {
+        replayBuffer.publish("Batman Begins");
+        replayBuffer.publish("The Dark Knight");
+        replayBuffer.publish("Dark Knight Rises");
+        replayBuffer.publish("Batman Begins1");
+        replayBuffer.publish("The Dark Knight1");
+
+        // sequence 2 is gone, the client sees the jump from 1 to 3
+        StepVerifier.create(replayBuffer.events(1).map(ReplayBuffer.Event::getSequence))
+                .expectNext(3L, 4L, 5L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("stream.replay.gaps").counter().count());
+    }
+
+    @Test
+    void resetShowsTheGap() {
+        replayBuffer.publish("Batman Begins");
+
+        StepVerifier.create(replayBuffer.events(0).map(ReplayBuffer.Event::getSequence))
+                .expectNext(1L)
+                .then(() -> {
+                    replayBuffer.reset();
+                    replayBuffer.publish("The Dark Knight");
+                })
+                .expectNext(3L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, replayBuffer.size());
+    }
+
+    @Test
+    void boundedByAge() {
+        replayBuffer.publish("Batman Begins");
+        now.addAndGet(Duration.ofSeconds(45).toNanos());
+        replayBuffer.publish("The Dark Knight");
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        StepVerifier.create(replayBuffer.events(0).map(ReplayBuffer.Event::getValue))
+                .expectNext("The Dark Knight")
+                .thenCancel()
+                .verify();
+        assertEquals(1, replayBuffer.size());
+    }
+
+    @Test
+    void sequenceFromBeforeRestartReplaysEverything() {
+        replayBuffer.publish("Batman Begins");
+
+        StepVerifier.create(replayBuffer.events(42).map(ReplayBuffer.Event::getValue))
+                .expectNext("Batman Begins")
+                .thenCancel()
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("stream.replay.gaps").counter().count());
+    }
+}
@@ -0,0 +1,87 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTest {
+
+    SearchIndex<String> searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new SearchIndex<>("movieinfos", Function.identity(), new SimpleMeterRegistry());
+        searchIndex.put("1", "Batman Begins");
+        searchIndex.put("2", "The Dark Knight");
+        searchIndex.put("3", "Dark Knight Rises");
+        searchIndex.put("4", "Amélie");
+    }
+
+    @Test
+    void findsByPrefixOfLastWord() {
+        assertEquals(List.of("Batman Begins"), searchIndex.search("bat", 10));
+        assertEquals(List.of("The Dark Knight", "Dark Knight Rises"), searchIndex.search("dark kn", 10));
+    }
+
+    @Test
+    void ranksExactWordsAboveShorterText() {
+        searchIndex.put("5", "Darkman");
+
+        assertEquals(List.of("The Dark Knight", "Dark Knight Rises", "Darkman"), searchIndex.search("dark", 10));
+    }
+
+    @Test
+    void toleratesTypos() {
+        assertEquals(List.of("Batman Begins"), searchIndex.search("btaman", 10));
+        assertEquals(List.of("Dark Knight Rises"), searchIndex.search("knight rizes", 10));
+        assertEquals(List.of("Amélie"), searchIndex.search("amelie", 10));
+    }
+
+    @Test
+    void everyWordHasToMatch() {
+        assertTrue(searchIndex.search("dark batman", 10).isEmpty());
+        assertTrue(searchIndex.search("", 10).isEmpty());
+    }
+
+    @Test
+    void returnsTopK() {
+        assertEquals(List.of("The Dark Knight"), searchIndex.search("dark", 1));
+    }
+
+    @Test
+    void followsUpdatesAndDeletes() {
+        searchIndex.put("1", "Batman Returns");
+        searchIndex.remove("2");
+
+        assertEquals(List.of("Batman Returns"), searchIndex.search("batman", 10));
+        assertTrue(searchIndex.search("begins", 10).isEmpty());
+        assertEquals(List.of("Dark Knight Rises"), searchIndex.search("knight", 10));
+        assertEquals(3, searchIndex.size());
+    }
+
+    @Test
+    void shortPrefixOnLargeCatalogReadsOnlyTheBest() {
+        var names = List.of("Dark", "Knight", "Batman", "Tenet", "Heat");
+        var catalog = new SearchIndex<String>("movieinfos", Function.identity(), new SimpleMeterRegistry());
+        for (int i = 0; i < 200_000; i++) {
+            catalog.put(String.valueOf(i), "The " + names.get(i % names.size()) + " " + i);
+        }
+
+        assertEquals(List.of("The Dark 0", "The Dark 5", "The Heat 4"), catalog.search("t", 3));
+        assertEquals(List.of("The Heat 4", "The Heat 9"), catalog.search("the he", 2));
+
+        var started = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            catalog.search(List.of("t", "th", "the", "the he").get(i % 4), 10);
+        }
+        // every word of these queries is in most of the catalog, a full scan per search would take seconds
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).compareTo(Duration.ofSeconds(2)) < 0);
+    }
+}
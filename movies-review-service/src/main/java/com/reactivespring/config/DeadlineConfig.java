@@ -0,0 +1,17 @@
+package com.reactivespring.config;
+
+import com.reactivespring.filter.DeadlineWebFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class DeadlineConfig {
+
+    @Bean
+    public DeadlineWebFilter deadlineWebFilter(@Value("${deadline.max:30s}") Duration max){
+        return new DeadlineWebFilter(max);
+    }
+}
@@ -0,0 +1,22 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.MongoIndexInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class MongoConfig {
+
+    // the documents whose @Indexed / @CompoundIndex indexes are created on startup
+    @Bean
+    public MongoIndexInitializer mongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate){
+        // the single movieInfoId index is covered by the prefix of movieInfoId_id
+        return new MongoIndexInitializer(reactiveMongoTemplate, List.of(Review.class),
+                Map.of(Review.class, List.of("movieInfoId")));
+    }
+}
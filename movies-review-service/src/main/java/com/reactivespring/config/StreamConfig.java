@@ -0,0 +1,33 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.StreamSubscribers;
+import com.reactivespring.util.TopicRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class StreamConfig {
+
+    // behind /v1/reviews/stream?movieInfoId=, keyed by movieInfoId
+    @Bean
+    public TopicRegistry<Long, Review> reviewTopics(MeterRegistry meterRegistry,
+                                                    @Value("${reviews.stream.topics.replaySize:16}") int replaySize,
+                                                    @Value("${reviews.stream.topics.idleTimeout:5m}") Duration idleTimeout,
+                                                    @Value("${reviews.stream.topics.maxTopics:10000}") int maxTopics){
+        return new TopicRegistry<>("reviews", replaySize, idleTimeout, maxTopics, meterRegistry);
+    }
+
+    // buffers per subscriber of /v1/reviews/stream, conflate keeps the latest review per movieInfoId
+    @Bean
+    public StreamSubscribers<Review> reviewSubscribers(MeterRegistry meterRegistry,
+                                                       @Value("${reviews.stream.subscriber.overflow:drop-oldest}") StreamSubscribers.Overflow overflow,
+                                                       @Value("${reviews.stream.subscriber.bufferSize:256}") int bufferSize,
+                                                       @Value("${reviews.stream.subscriber.heartbeatInterval:15s}") Duration heartbeatInterval){
+        return new StreamSubscribers<>("reviews", overflow, bufferSize, Review::getMovieInfoId, heartbeatInterval, meterRegistry);
+    }
+}
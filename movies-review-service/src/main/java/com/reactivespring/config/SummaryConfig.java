@@ -0,0 +1,16 @@
+package com.reactivespring.config;
+
+import com.reactivespring.util.WriteGate;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SummaryConfig {
+
+    // review writes pause while the rating summaries are rebuilt
+    @Bean
+    public WriteGate reviewWriteGate(MeterRegistry meterRegistry){
+        return new WriteGate("reviews", meterRegistry);
+    }
+}
@@ -1,10 +1,14 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
@@ -14,6 +18,14 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// fields left out of a projection stay null and are not written either
+@JsonInclude(JsonInclude.Include.NON_NULL)
+// one index per page order, with and without a movieInfoId filter, the first also serves movieInfoId lookups
+@CompoundIndexes({
+        @CompoundIndex(name = "movieInfoId_id", def = "{'movieInfoId': 1, '_id': -1}"),
+        @CompoundIndex(name = "movieInfoId_rating_id", def = "{'movieInfoId': 1, 'rating': -1, '_id': -1}"),
+        @CompoundIndex(name = "rating_id", def = "{'rating': -1, '_id': -1}")
+})
 public class Review {
 
     @Id
@@ -23,4 +35,11 @@ public class Review {
     private String comment;
     @Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     private Double rating;
+    // bumped on every update, sending it back makes PUT and PATCH conditional on it
+    @Version
+    private Long version;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
 }
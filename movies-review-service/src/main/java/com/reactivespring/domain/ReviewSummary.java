@@ -0,0 +1,40 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rating totals of all reviews of one movie, kept up to date with $inc on every review write.
+ * Reviews without a rating are not counted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewSummary {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private double sum;
+    // number of reviews per rating rounded down, e.g. "8" for 8.0 up to 8.9
+    private Map<String, Long> histogram = new HashMap<>();
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+
+    public static ReviewSummary empty(Long movieInfoId) {
+        return new ReviewSummary(movieInfoId, 0, 0, new HashMap<>());
+    }
+
+    public static String bucket(double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
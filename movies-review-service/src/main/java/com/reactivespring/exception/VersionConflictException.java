@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class VersionConflictException extends RuntimeException {
+    private String message;
+    public VersionConflictException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class WriteQueueFullException extends RuntimeException {
+    private String message;
+    public WriteQueueFullException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
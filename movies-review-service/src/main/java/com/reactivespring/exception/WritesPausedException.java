@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class WritesPausedException extends RuntimeException {
+    private String message;
+    public WritesPausedException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
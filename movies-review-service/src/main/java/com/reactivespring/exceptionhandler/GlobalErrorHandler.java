@@ -1,10 +1,19 @@
 package com.reactivespring.exceptionhandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.IdempotencyKeyInProgressException;
+import com.reactivespring.exception.IdempotencyKeyReuseException;
+import com.reactivespring.exception.IdempotencyStoreFullException;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.exception.VersionConflictException;
+import com.reactivespring.exception.WriteQueueFullException;
+import com.reactivespring.exception.WritesPausedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -27,6 +36,41 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
             exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
             return exchange.getResponse().writeWith(Mono.just(errorMessage));
         }
+        if(ex instanceof VersionConflictException){
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof DuplicateKeyException){
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(dataBufferFactory.wrap("Review already exists".getBytes())));
+        }
+        if(ex instanceof IdempotencyKeyReuseException){
+            exchange.getResponse().setStatusCode(HttpStatus.UNPROCESSABLE_ENTITY);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof IdempotencyKeyInProgressException){
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof IdempotencyStoreFullException){
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof WriteQueueFullException){
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof WritesPausedException){
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "5");
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+        if(ex instanceof DeadlineExceededException){
+            exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
         exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
         return exchange.getResponse().writeWith(Mono.just(errorMessage));
     }
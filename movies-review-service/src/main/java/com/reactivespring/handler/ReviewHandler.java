@@ -3,43 +3,124 @@ package com.reactivespring.handler;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.repository.ReviewCursor;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewWriteBatcher;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.IdempotencyStore;
+import com.reactivespring.util.StreamSubscribers;
+import com.reactivespring.util.TopicRegistry;
+import com.reactivespring.util.WriteGate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import org.springframework.http.HttpStatus;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
 @Component
 @Slf4j
 public class ReviewHandler {
 
+    // what fields= may ask for, reviewId is always returned
+    private static final Set<String> SELECTABLE_FIELDS = Set.of("movieInfoId", "comment", "rating");
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private Validator validator;
     private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewSummaryRepository reviewSummaryRepository;
+    private ReviewWriteBatcher reviewWriteBatcher;
+    private Counter deadlineExceededCounter;
+    private Counter summaryFailureCounter;
+    private int defaultPageSize;
+    private int maxPageSize;
 
-    Sinks.Many<Review> reviewSink = Sinks.many().replay().all();
+    Sinks.Many<Review> reviewSink;
+    private TopicRegistry<Long, Review> reviewTopics;
+    private StreamSubscribers<Review> reviewSubscribers;
+    private IdempotencyStore<Review> reviewIdempotencyStore;
+    // a review write and its summary update never overlap a summary rebuild
+    private WriteGate reviewWriteGate;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewSummaryRepository reviewSummaryRepository,
+                         ReviewWriteBatcher reviewWriteBatcher, TopicRegistry<Long, Review> reviewTopics,
+                         StreamSubscribers<Review> reviewSubscribers, IdempotencyStore<Review> reviewIdempotencyStore,
+                         WriteGate reviewWriteGate, MeterRegistry meterRegistry,
+                         @Value("${pagination.defaultPageSize:100}") int defaultPageSize,
+                         @Value("${pagination.maxPageSize:500}") int maxPageSize,
+                         @Value("${reviews.stream.replaySize:1000}") int streamReplaySize) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reviewWriteBatcher = reviewWriteBatcher;
+        this.reviewTopics = reviewTopics;
+        this.reviewSubscribers = reviewSubscribers;
+        this.reviewIdempotencyStore = reviewIdempotencyStore;
+        this.reviewWriteGate = reviewWriteGate;
+        // new subscribers of the unfiltered stream replay the last streamReplaySize reviews, not every review ever added
+        this.reviewSink = Sinks.many().replay().limit(streamReplaySize);
+        this.deadlineExceededCounter = Deadline.exceededCounter("mongo", meterRegistry);
+        this.summaryFailureCounter = Counter.builder("reviews.summary.failures")
+                .description("Review writes whose rating summary could not be updated, fixed by a summary rebuild")
+                .register(meterRegistry);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
 
+        var idempotencyKey = request.headers().firstHeader(IdempotencyStore.HEADER);
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH)) {
+            return Mono.error(new ReviewDataException(IdempotencyStore.HEADER + " must have 1 to "
+                    + IdempotencyStore.MAX_KEY_LENGTH + " characters"));
+        }
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewReactiveRepository::save)
-                .doOnNext(review -> reviewSink.tryEmitNext(review))
-                .flatMap((ServerResponse.status(HttpStatus.CREATED)::bodyValue));
+                .flatMap(review -> idempotencyKey == null
+                        ? insert(review).flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue)
+                        // a retry gets the review stored for its key, without a second insert or stream emit
+                        : reviewIdempotencyStore.execute(idempotencyKey, fingerprint(review), () -> insert(review))
+                                .flatMap(result -> ServerResponse.status(HttpStatus.CREATED)
+                                        .header(IdempotencyStore.REPLAYED_HEADER, String.valueOf(result.isReplayed()))
+                                        .bodyValue(result.getValue())));
+    }
+
+    private Mono<Review> insert(Review review) {
+        return reviewWriteGate.write(() -> reviewWriteBatcher.insert(review)
+                        .flatMap(saved -> updateSummary(saved.getMovieInfoId(), null, saved.getRating()).thenReturn(saved)))
+                .doOnNext(saved -> {
+                    reviewSink.tryEmitNext(saved);
+                    reviewTopics.publish(saved.getMovieInfoId(), saved);
+                });
+    }
+
+    private static String fingerprint(Review review) {
+        return IdempotencyStore.fingerprint(review.getReviewId(), review.getMovieInfoId(), review.getComment(), review.getRating());
     }
 
     private void validate(Review review) {
@@ -57,51 +138,219 @@ public class ReviewHandler {
 
     public Mono<ServerResponse> getReview(ServerRequest request) {
         var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = request.queryParam("movieInfoIds");
+        var fields = request.queryParam("fields")
+                .map(this::selectedFields)
+                .orElse(Set.of());
 
-        if(movieInfoId.isPresent()){
-            var reviewsFlux = reviewReactiveRepository.
-                    findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
-            return ServerResponse.ok().body(reviewsFlux, Review.class);
-
+        Criteria criteria;
+        if(movieInfoIds.isPresent()){
+            criteria = where("movieInfoId").in(movieInfoIds(movieInfoIds.get()));
+        }
+        else if(movieInfoId.isPresent()){
+            criteria = where("movieInfoId").is(Long.valueOf(movieInfoId.get()));
         }
         else{
-            var reviewsFlux = reviewReactiveRepository.findAll();
-            return ServerResponse.ok().body(reviewsFlux, Review.class);
+            criteria = new Criteria();
+        }
+        var pageSize = pageSize("limit", request.queryParam("limit"));
+        var cursor = cursor(request.queryParam("after"), request.queryParam("sort"));
+        // one more than the page size tells whether there is a next page
+        return findReviews(criteria, cursor, pageSize + 1, fields)
+                .collectList()
+                .flatMap(page -> {
+                    if (page.size() <= pageSize) {
+                        return ServerResponse.ok().bodyValue(page);
+                    }
+                    var lastOnPage = page.get(pageSize - 1);
+                    return ServerResponse.ok()
+                            .header(NEXT_CURSOR_HEADER, cursor.next(lastOnPage).encode())
+                            .bodyValue(page.subList(0, pageSize));
+                });
+
+    }
+
+    // the top perMovie reviews of every movie in movieInfoIds, as a map from movieInfoId to its reviews
+    public Mono<ServerResponse> getReviewsByMovie(ServerRequest request) {
+        var movieInfoIds = request.queryParam("movieInfoIds")
+                .map(ReviewHandler::movieInfoIds)
+                .filter(ids -> !ids.isEmpty())
+                .orElseThrow(() -> new ReviewDataException("Pass the movieInfoIds to look up"));
+        if (movieInfoIds.size() > maxPageSize) {
+            throw new ReviewDataException("At most " + maxPageSize + " movieInfoIds per request");
+        }
+        var perMovie = pageSize("perMovie", request.queryParam("perMovie"));
+        var sortBy = sortBy(request.queryParam("sort"));
+        var fields = request.queryParam("fields")
+                .map(this::selectedFields)
+                .orElse(Set.of());
+
+        var reviewsByMovie = Deadline.enforce(
+                        reviewReactiveRepository.findTopPerMovie(movieInfoIds, sortBy, perMovie, fields),
+                        "mongo", deadlineExceededCounter)
+                .collect(() -> {
+                    // every movie asked for is in the map, in the order asked for
+                    var groups = new LinkedHashMap<Long, List<Review>>();
+                    movieInfoIds.forEach(movieInfoId -> groups.put(movieInfoId, new ArrayList<>()));
+                    return groups;
+                }, (groups, review) -> groups.get(review.getMovieInfoId()).add(review));
+        return reviewsByMovie.flatMap(groups -> ServerResponse.ok().bodyValue(groups));
+    }
+
+    private static Set<Long> movieInfoIds(String movieInfoIds) {
+        return Arrays.stream(movieInfoIds.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(Long::valueOf)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<String> selectedFields(String fields) {
+        var selectedFields = new LinkedHashSet<String>();
+        for (var field : fields.split(",")) {
+            var trimmed = field.trim();
+            if (!SELECTABLE_FIELDS.contains(trimmed)) {
+                throw new ReviewDataException("Unknown field : " + trimmed + ", fields can be " + SELECTABLE_FIELDS);
+            }
+            selectedFields.add(trimmed);
         }
+        return selectedFields;
+    }
 
+    // the page size is capped server side, whatever the client asks for
+    private int pageSize(String name, Optional<String> limit) {
+        if (limit.isEmpty()) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        int requested;
+        try {
+            requested = Integer.parseInt(limit.get());
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException(name + " must be a positive value");
+        }
+        if (requested < 1) {
+            throw new ReviewDataException(name + " must be a positive value");
+        }
+        return Math.min(requested, maxPageSize);
+    }
+
+    // a cursor carries its own order, sort only applies to the first page
+    private ReviewCursor cursor(Optional<String> after, Optional<String> sort) {
+        if (after.isPresent()) {
+            try {
+                return ReviewCursor.decode(after.get());
+            } catch (IllegalArgumentException e) {
+                throw new ReviewDataException(e.getMessage());
+            }
+        }
+        return ReviewCursor.first(sortBy(sort));
+    }
+
+    private ReviewCursor.SortBy sortBy(Optional<String> sort) {
+        var sortBy = sort.orElse("newest");
+        if (sortBy.equals("newest")) {
+            return ReviewCursor.SortBy.NEWEST;
+        }
+        if (sortBy.equals("rating")) {
+            return ReviewCursor.SortBy.RATING;
+        }
+        throw new ReviewDataException("Unknown sort : " + sortBy + ", sort can be newest or rating");
+    }
+
+    private Flux<Review> findReviews(Criteria criteria, ReviewCursor cursor, int limit, Set<String> fields) {
+        return Deadline.enforce(reviewReactiveRepository.findPage(criteria, cursor, limit, fields),
+                "mongo", deadlineExceededCounter);
     }
 
     public Mono<ServerResponse> updateReview(ServerRequest request) {
 
         var reviewId = request.pathVariable("id");
 
-        var existingReview = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given reviewId " + reviewId)));
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> update(reviewId, reqReview, new Update()
+                        .set("comment", reqReview.getComment())
+                        .set("rating", reqReview.getRating())))
+                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given reviewId " + reviewId)))
+                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview));
+    }
+
+    // only the comment and rating present in the body are set
+    public Mono<ServerResponse> patchReview(ServerRequest request) {
 
+        var reviewId = request.pathVariable("id");
 
-        return existingReview.flatMap(review -> request.bodyToMono(Review.class)
-                .map(reqReview -> {
-                    review.setComment(reqReview.getComment());
-                    review.setRating(reqReview.getRating());
-                    return review;
-                })
-                .flatMap(reviewReactiveRepository::save)
-                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview)));
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> update(reviewId, reqReview, patch(reqReview)))
+                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given reviewId " + reviewId)))
+                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview));
+    }
+
+    private Mono<Review> update(String reviewId, Review reqReview, Update update) {
+        return reviewWriteGate.write(() -> reviewReactiveRepository.findAndUpdate(reviewId, reqReview.getVersion(), update)
+                .flatMap(previous -> {
+                    // the review as written by this update, rebuilt from the one it replaced
+                    var updated = new Review(previous.getReviewId(), previous.getMovieInfoId(),
+                            update.modifies("comment") ? reqReview.getComment() : previous.getComment(),
+                            update.modifies("rating") ? reqReview.getRating() : previous.getRating(),
+                            previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+                    return updateSummary(previous.getMovieInfoId(), previous.getRating(), updated.getRating())
+                            .thenReturn(updated);
+                }));
+    }
+
+    private Update patch(Review review) {
+        var update = new Update();
+        if (review.getComment() != null) {
+            update.set("comment", review.getComment());
+        }
+        if (review.getRating() != null) {
+            var constraintViolations = validator.validateProperty(review, "rating");
+            if (!constraintViolations.isEmpty()) {
+                throw new ReviewDataException(constraintViolations.iterator().next().getMessage());
+            }
+            update.set("rating", review.getRating());
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            throw new ReviewDataException("Nothing to update, pass a comment or a rating");
+        }
+        return update;
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
 
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId);
-        return existingReview.flatMap(review -> reviewReactiveRepository.deleteById(reviewId))
+        // only the request that actually removed the review takes its rating out of the summary
+        return reviewWriteGate.write(() -> reviewReactiveRepository.findAndDelete(reviewId)
+                        .flatMap(review -> updateSummary(review.getMovieInfoId(), review.getRating(), null)))
                 .then(ServerResponse.noContent().build());
     }
 
+    // the review is already written, a failed summary update is logged and counted rather than failing the request
+    private Mono<Void> updateSummary(Long movieInfoId, Double removedRating, Double addedRating) {
+        if (Objects.equals(removedRating, addedRating)) {
+            return Mono.empty();
+        }
+        return reviewSummaryRepository.applyRatingChange(movieInfoId, removedRating, addedRating)
+                .onErrorResume(ex -> {
+                    log.error("Exception updating the review summary of movieInfoId {} : {}", movieInfoId, ex.getMessage());
+                    summaryFailureCounter.increment();
+                    return Mono.empty();
+                });
+    }
+
+    // with movieInfoId only the reviews of that movie, from its own topic rather than filtered out of every review
     public Mono<ServerResponse> getStreamReview(ServerRequest request) {
+        var reviews = request.queryParam("movieInfoId")
+                .map(movieInfoId -> reviewTopics.subscribe(Long.valueOf(movieInfoId)))
+                .orElseGet(reviewSink::asFlux);
+        // heartbeat lines are opt-in, not every client expects a line that is not a Review
+        var heartbeat = request.queryParam("heartbeat").map(Boolean::parseBoolean).orElse(false);
         return ServerResponse
                 .ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewSink.asFlux(), Review.class)
+                .body(heartbeat
+                        ? reviewSubscribers.subscribeWithHeartbeats(reviews)
+                        : reviewSubscribers.subscribe(reviews).cast(Object.class), Object.class)
                 .log();
     }
 }
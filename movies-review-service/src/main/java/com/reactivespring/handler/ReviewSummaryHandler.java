@@ -0,0 +1,87 @@
+package com.reactivespring.handler;
+
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.util.WriteGate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+@Slf4j
+public class ReviewSummaryHandler {
+
+    private ReviewSummaryRepository reviewSummaryRepository;
+    private WriteGate reviewWriteGate;
+    private boolean rebuildOnStartup;
+
+    public ReviewSummaryHandler(ReviewSummaryRepository reviewSummaryRepository, WriteGate reviewWriteGate,
+                                @Value("${reviews.summary.rebuildOnStartup:false}") boolean rebuildOnStartup) {
+        this.reviewSummaryRepository = reviewSummaryRepository;
+        this.reviewWriteGate = reviewWriteGate;
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    // a movie without rated reviews gets an empty summary rather than a 404
+    public Mono<ServerResponse> getSummary(ServerRequest request) {
+        var movieInfoIds = request.queryParam("movieInfoIds");
+        if (movieInfoIds.isPresent()) {
+            var ids = Arrays.stream(movieInfoIds.get().split(","))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList());
+            // in the order asked for
+            var summaries = reviewSummaryRepository.findAllById(ids)
+                    .collectMap(ReviewSummary::getMovieInfoId)
+                    .flatMapMany(found -> Flux.fromIterable(ids)
+                            .map(id -> found.getOrDefault(id, ReviewSummary.empty(id))));
+            return ServerResponse.ok().body(summaries, ReviewSummary.class);
+        }
+        var movieInfoId = request.queryParam("movieInfoId")
+                .map(Long::valueOf)
+                .orElseThrow(() -> new ReviewDataException("Pass a movieInfoId or movieInfoIds"));
+        return reviewSummaryRepository.findById(movieInfoId)
+                .defaultIfEmpty(ReviewSummary.empty(movieInfoId))
+                .flatMap(summary -> ServerResponse.ok().bodyValue(summary));
+    }
+
+    public Mono<ServerResponse> rebuildSummaries(ServerRequest request) {
+        return rebuild()
+                .flatMap(count -> ServerResponse.ok().bodyValue(Map.of("summaries", count)));
+    }
+
+    // for data written before the summaries existed, or after reviews.summary.failures went up
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildSummariesOnStartup() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        rebuild()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("Review summary rebuild failed, retrying : {}",
+                                retrySignal.failure().getMessage())))
+                .subscribe(count -> log.info("Review summaries rebuilt : {}", count));
+    }
+
+    // the rebuild overwrites summaries with what it read from the reviews, a write running meanwhile would be lost
+    // or counted twice; review writes on other instances are not held off, rebuild while they are not writing
+    private Mono<Long> rebuild() {
+        return reviewWriteGate.exclusive(() -> reviewSummaryRepository.rebuild());
+    }
+}
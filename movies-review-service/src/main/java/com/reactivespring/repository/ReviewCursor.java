@@ -0,0 +1,108 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Position in a keyset-paginated listing of reviews, newest first or highest rated first. Newest is the reviewId
+ * descending, generated ObjectIds grow with their creation time. The next page starts strictly after the last
+ * review of the previous one, so a deep page costs the same as the first.
+ */
+public class ReviewCursor {
+
+    public enum SortBy {
+        NEWEST, RATING
+    }
+
+    private static final int BSON_STRING = 2;
+
+    private final SortBy sortBy;
+    private final Double rating;
+    private final String reviewId;
+
+    private ReviewCursor(SortBy sortBy, Double rating, String reviewId) {
+        this.sortBy = sortBy;
+        this.rating = rating;
+        this.reviewId = reviewId;
+    }
+
+    public static ReviewCursor first(SortBy sortBy) {
+        return new ReviewCursor(sortBy, null, null);
+    }
+
+    public ReviewCursor next(Review last) {
+        return new ReviewCursor(sortBy, last.getRating(), last.getReviewId());
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isFirst() {
+        return reviewId == null;
+    }
+
+    public Sort sort() {
+        return sortBy == SortBy.RATING
+                ? Sort.by(Sort.Direction.DESC, "rating", "reviewId")
+                : Sort.by(Sort.Direction.DESC, "reviewId");
+    }
+
+    // reviews strictly after this cursor in sort() order
+    public Criteria criteria() {
+        if (isFirst()) {
+            return new Criteria();
+        }
+        if (sortBy == SortBy.RATING) {
+            // reviews without a rating sort last
+            if (rating == null) {
+                return new Criteria().andOperator(where("rating").is(null), idBefore());
+            }
+            return new Criteria().orOperator(
+                    where("rating").lt(rating),
+                    new Criteria().andOperator(where("rating").is(rating), idBefore()),
+                    where("rating").is(null));
+        }
+        return idBefore();
+    }
+
+    private Criteria idBefore() {
+        // ids that are valid ObjectIds are stored as ObjectIds, and every string id sorts before every ObjectId
+        if (ObjectId.isValid(reviewId)) {
+            return new Criteria().orOperator(
+                    where("reviewId").lt(new ObjectId(reviewId)),
+                    where("reviewId").type(BSON_STRING));
+        }
+        return where("reviewId").lt(reviewId);
+    }
+
+    public String encode() {
+        var value = sortBy == SortBy.RATING
+                ? "r:" + (rating == null ? "" : rating) + ":" + reviewId
+                : "n:" + reviewId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ReviewCursor decode(String cursor) {
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith("n:")) {
+                return new ReviewCursor(SortBy.NEWEST, null, value.substring(2));
+            }
+            var parts = value.split(":", 3);
+            if (parts.length == 3 && parts[0].equals("r")) {
+                return new ReviewCursor(SortBy.RATING, parts[1].isEmpty() ? null : Double.valueOf(parts[1]), parts[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            // not base64 or not a rating, reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor : " + cursor);
+    }
+}
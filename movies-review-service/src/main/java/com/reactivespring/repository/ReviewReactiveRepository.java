@@ -4,6 +4,9 @@ import com.reactivespring.domain.Review;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 
-public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String> {
+import java.util.Collection;
+
+public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String>, ReviewReactiveRepositoryCustom {
     Flux<Review> findReviewsByMovieInfoId(Long movieInfoId);
+    Flux<Review> findReviewsByMovieInfoIdIn(Collection<Long> movieInfoIds);
 }
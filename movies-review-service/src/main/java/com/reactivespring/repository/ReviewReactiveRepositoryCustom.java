@@ -0,0 +1,39 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ReviewReactiveRepositoryCustom {
+
+    // run with maxTime set to what is left of the deadline in the subscriber context
+    Flux<Review> findWithDeadline(Query query);
+
+    // at most limit reviews matching criteria after the cursor, in the cursor's order
+    // fields, when not empty, is the projection, the sort keys are always included
+    Flux<Review> findPage(Criteria criteria, ReviewCursor after, int limit, Collection<String> fields);
+
+    // the first perMovie reviews in sortBy order of each movie, grouped by movie in the order of movieInfoIds
+    Flux<Review> findTopPerMovie(Collection<Long> movieInfoIds, ReviewCursor.SortBy sortBy, int perMovie,
+                                 Collection<String> fields);
+
+    // applies update and bumps the version in one findAndModify, only at expectedVersion unless that is null
+    // returns the review as it was before the update, so callers see exactly what they replaced
+    // empty when there is no such review, VersionConflictException when it is at another version
+    Mono<Review> findAndUpdate(String reviewId, Long expectedVersion, Update update);
+
+    // removes and returns the review in one findAndModify, empty when it was already gone
+    Mono<Review> findAndDelete(String reviewId);
+
+    // one unordered insertMany, a failing review does not stop the others
+    // returns the write errors by position in reviews and sets the generated ids and initial versions on reviews
+    Mono<Map<Integer, DataAccessException>> insertUnordered(List<Review> reviews);
+}
@@ -0,0 +1,154 @@
+package com.reactivespring.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.VersionConflictException;
+import com.reactivespring.util.Deadline;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    private static final int MAX_CONCURRENT_QUERIES = 8;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findWithDeadline(Query query) {
+        return Flux.deferContextual(context -> {
+                    // a maxTime of 0 would mean no limit at all
+                    Deadline.from(context).ifPresent(deadline ->
+                            query.maxTime(Duration.ofMillis(Math.max(1, deadline.remaining().toMillis()))));
+                    return reactiveMongoTemplate.find(query, Review.class);
+                })
+                .onErrorMap(ReviewReactiveRepositoryCustomImpl::isMaxTimeExpired,
+                        ex -> new DeadlineExceededException("Deadline exceeded in mongo"));
+    }
+
+    @Override
+    public Flux<Review> findPage(Criteria criteria, ReviewCursor after, int limit, Collection<String> fields) {
+        var pageCriteria = after.isFirst() ? criteria : new Criteria().andOperator(criteria, after.criteria());
+        var query = Query.query(pageCriteria)
+                .with(after.sort())
+                .limit(limit);
+        if (!fields.isEmpty()) {
+            fields.forEach(query.fields()::include);
+            // the next cursor is built from the sort keys of the last review
+            after.sort().forEach(order -> query.fields().include(order.getProperty()));
+        }
+        return findWithDeadline(query);
+    }
+
+    @Override
+    public Flux<Review> findTopPerMovie(Collection<Long> movieInfoIds, ReviewCursor.SortBy sortBy, int perMovie,
+                                        Collection<String> fields) {
+        // a single $in can not stop after perMovie reviews of each movie, it would read every review of every movie,
+        // so each movie gets its own index scan bounded by perMovie
+        var projection = fields.isEmpty() ? fields : new LinkedHashSet<>(fields);
+        if (!projection.isEmpty()) {
+            projection.add("movieInfoId");
+        }
+        return Flux.fromIterable(movieInfoIds)
+                .flatMapSequential(movieInfoId -> findPage(where("movieInfoId").is(movieInfoId),
+                        ReviewCursor.first(sortBy), perMovie, projection), MAX_CONCURRENT_QUERIES);
+    }
+
+    @Override
+    public Mono<Review> findAndUpdate(String reviewId, Long expectedVersion, Update update) {
+        // documents written before versioning have no version field, version null matches them
+        var criteria = expectedVersion == null
+                ? where("reviewId").is(reviewId)
+                : where("reviewId").is(reviewId).and("version").is(expectedVersion);
+        return reactiveMongoTemplate.findAndModify(Query.query(criteria), update.inc("version", 1),
+                        FindAndModifyOptions.options().returnNew(false), Review.class)
+                // only a failed conditional update costs a second round trip, to tell a conflict from a missing id
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null
+                        ? Mono.empty()
+                        : reactiveMongoTemplate.exists(Query.query(where("reviewId").is(reviewId)), Review.class)
+                                .flatMap(exists -> exists
+                                        ? Mono.error(new VersionConflictException("Review " + reviewId
+                                                + " was modified, it is no longer at version " + expectedVersion))
+                                        : Mono.empty())));
+    }
+
+    @Override
+    public Mono<Review> findAndDelete(String reviewId) {
+        return reactiveMongoTemplate.findAndRemove(Query.query(where("reviewId").is(reviewId)), Review.class);
+    }
+
+    @Override
+    public Mono<Map<Integer, DataAccessException>> insertUnordered(List<Review> reviews) {
+        var converter = reactiveMongoTemplate.getConverter();
+        var documents = reviews.stream()
+                .map(review -> {
+                    // what save would start a new review at
+                    if (review.getVersion() == null) {
+                        review.setVersion(0L);
+                    }
+                    var document = new Document();
+                    converter.write(review, document);
+                    return document;
+                })
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, DataAccessException>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex,
+                                ReviewReactiveRepositoryCustomImpl::toDataAccessException))))
+                .doOnNext(errors -> {
+                    // the driver adds an ObjectId _id to every document that had none
+                    for (int i = 0; i < documents.size(); i++) {
+                        reviews.get(i).setReviewId(idOf(documents.get(i)));
+                    }
+                });
+    }
+
+    private static DataAccessException toDataAccessException(BulkWriteError error) {
+        return ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY
+                ? new DuplicateKeyException(error.getMessage())
+                : new DataIntegrityViolationException(error.getMessage());
+    }
+
+    private static String idOf(Document document) {
+        var id = document.get("_id");
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+    }
+
+    private static boolean isMaxTimeExpired(Throwable ex) {
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoExecutionTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
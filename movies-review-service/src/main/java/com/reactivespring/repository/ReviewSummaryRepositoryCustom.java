@@ -0,0 +1,12 @@
+package com.reactivespring.repository;
+
+import reactor.core.publisher.Mono;
+
+public interface ReviewSummaryRepositoryCustom {
+
+    // one upserting $inc, removedRating and addedRating are null when there was / is no rating
+    Mono<Void> applyRatingChange(Long movieInfoId, Double removedRating, Double addedRating);
+
+    // recomputes every summary from the reviews, returns the number of movies with a summary
+    Mono<Long> rebuild();
+}
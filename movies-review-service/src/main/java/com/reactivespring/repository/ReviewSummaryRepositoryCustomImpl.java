@@ -0,0 +1,106 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReviewSummaryRepositoryCustomImpl implements ReviewSummaryRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewSummaryRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> applyRatingChange(Long movieInfoId, Double removedRating, Double addedRating) {
+        long countDelta = 0;
+        double sumDelta = 0;
+        var histogramDelta = new HashMap<String, Long>();
+        if (removedRating != null) {
+            countDelta--;
+            sumDelta -= removedRating;
+            histogramDelta.merge(ReviewSummary.bucket(removedRating), -1L, Long::sum);
+        }
+        if (addedRating != null) {
+            countDelta++;
+            sumDelta += addedRating;
+            histogramDelta.merge(ReviewSummary.bucket(addedRating), 1L, Long::sum);
+        }
+        var update = new Update();
+        if (countDelta != 0) {
+            update.inc("count", countDelta);
+        }
+        if (sumDelta != 0) {
+            update.inc("sum", sumDelta);
+        }
+        histogramDelta.forEach((bucket, delta) -> {
+            if (delta != 0) {
+                update.inc("histogram." + bucket, delta);
+            }
+        });
+        if (update.getUpdateObject().isEmpty()) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.upsert(query(where("movieInfoId").is(movieInfoId)), update, ReviewSummary.class)
+                .then();
+    }
+
+    // saves what it aggregated over the $inc of any review write running meanwhile, callers hold writes off
+    @Override
+    public Mono<Long> rebuild() {
+        // one group per movie and rating bucket, sorted so that the groups of a movie arrive together
+        var pipeline = List.of(
+                new Document("$match", new Document("rating", new Document("$ne", null))),
+                new Document("$group", new Document("_id", new Document("movieInfoId", "$movieInfoId")
+                        .append("bucket", new Document("$floor", "$rating")))
+                        .append("count", new Document("$sum", 1))
+                        .append("sum", new Document("$sum", "$rating"))),
+                new Document("$sort", new Document("_id.movieInfoId", 1)));
+
+        var rebuilt = reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMapMany(collection -> collection.aggregate(pipeline).allowDiskUse(true))
+                .bufferUntilChanged(group -> group.get("_id", Document.class).get("movieInfoId"))
+                .map(ReviewSummaryRepositoryCustomImpl::toSummary)
+                .flatMap(reactiveMongoTemplate::save, 8)
+                .count();
+
+        return rebuilt.flatMap(count -> removeOrphans().thenReturn(count));
+    }
+
+    // summaries of movies that have no rated review left
+    private Mono<Void> removeOrphans() {
+        var ids = new Query();
+        ids.fields().include("movieInfoId");
+        return reactiveMongoTemplate.find(ids, ReviewSummary.class)
+                .filterWhen(summary -> reactiveMongoTemplate.exists(query(where("movieInfoId").is(summary.getMovieInfoId())
+                                .and("rating").ne(null)), Review.class)
+                        .map(exists -> !exists))
+                .flatMap(summary -> reactiveMongoTemplate.remove(query(where("movieInfoId").is(summary.getMovieInfoId())),
+                        ReviewSummary.class), 8)
+                .then();
+    }
+
+    private static ReviewSummary toSummary(List<Document> groups) {
+        var movieInfoId = ((Number) groups.get(0).get("_id", Document.class).get("movieInfoId")).longValue();
+        var summary = ReviewSummary.empty(movieInfoId);
+        for (var group : groups) {
+            var count = ((Number) group.get("count")).longValue();
+            var bucket = ((Number) group.get("_id", Document.class).get("bucket")).doubleValue();
+            summary.setCount(summary.getCount() + count);
+            summary.setSum(summary.getSum() + ((Number) group.get("sum")).doubleValue());
+            summary.getHistogram().put(ReviewSummary.bucket(bucket), count);
+        }
+        return summary;
+    }
+}
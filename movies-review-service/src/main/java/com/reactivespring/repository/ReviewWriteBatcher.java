@@ -0,0 +1,161 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.WriteQueueFullException;
+import com.reactivespring.exception.WritesPausedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind inserts: reviews are collected for up to maxDelay or maxBatchSize reviews and written with one
+ * unordered insertMany, then every caller completes with the outcome of its own review.
+ * At most maxQueueDepth reviews are queued or being written, beyond that insert fails with WriteQueueFullException.
+ */
+@Component
+@Slf4j
+public class ReviewWriteBatcher {
+
+    // stop() may collide with a caller on the sink, the loser retries instead of failing
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private ReviewReactiveRepository reviewReactiveRepository;
+    private MeterRegistry meterRegistry;
+    private boolean enabled;
+    private int maxQueueDepth;
+
+    private final Sinks.Many<PendingInsert> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger depth = new AtomicInteger();
+    private DistributionSummary batchSize;
+    private Timer flushTimer;
+    private Counter rejectedCounter;
+    private Disposable flushSubscription;
+
+    public ReviewWriteBatcher(ReviewReactiveRepository reviewReactiveRepository, MeterRegistry meterRegistry,
+                              @Value("${reviews.writeBatching.enabled:false}") boolean enabled,
+                              @Value("${reviews.writeBatching.maxBatchSize:100}") int maxBatchSize,
+                              @Value("${reviews.writeBatching.maxDelay:5ms}") Duration maxDelay,
+                              @Value("${reviews.writeBatching.maxQueueDepth:10000}") int maxQueueDepth,
+                              @Value("${reviews.writeBatching.maxInFlightBatches:2}") int maxInFlightBatches) {
+        this.reviewReactiveRepository = reviewReactiveRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxQueueDepth = maxQueueDepth;
+        this.batchSize = DistributionSummary.builder("reviews.write.batch.size")
+                .description("Reviews written per insertMany")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("reviews.write.flush")
+                .description("Time to write one batch of reviews")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("reviews.write.rejected")
+                .description("Reviews rejected because the write queue was full")
+                .register(meterRegistry);
+        Gauge.builder("reviews.write.queue.depth", depth, AtomicInteger::get)
+                .description("Reviews queued or being written")
+                .register(meterRegistry);
+        if (enabled) {
+            // onBackpressureBuffer holds batches while maxInFlightBatches are being written, bounded through depth
+            this.flushSubscription = queue.asFlux()
+                    .bufferTimeout(maxBatchSize, maxDelay)
+                    .onBackpressureBuffer()
+                    .flatMap(this::flush, maxInFlightBatches)
+                    .subscribe();
+        }
+    }
+
+    // completes with the inserted review once the batch it went out with is written, a plain save when disabled
+    public Mono<Review> insert(Review review) {
+        if (!enabled) {
+            return reviewReactiveRepository.save(review);
+        }
+        return Mono.defer(() -> {
+            if (depth.incrementAndGet() > maxQueueDepth) {
+                depth.decrementAndGet();
+                rejectedCounter.increment();
+                return Mono.error(new WriteQueueFullException("Review write queue is full, retry later"));
+            }
+            var pendingInsert = new PendingInsert(review);
+            if (!enqueue(pendingInsert)) {
+                depth.decrementAndGet();
+                return Mono.error(new WritesPausedException("Review writes have stopped, retry later"));
+            }
+            return pendingInsert.result.asMono();
+        });
+    }
+
+    // false once the queue is completed or its subscriber is gone, nothing would ever write the review
+    private boolean enqueue(PendingInsert pendingInsert) {
+        Sinks.EmitResult emitResult;
+        // concurrent callers may collide on the sink, the loser retries instead of failing
+        while ((emitResult = queue.tryEmitNext(pendingInsert)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+        if (emitResult.isFailure()) {
+            log.warn("Review not queued for writing : {}", emitResult);
+            return false;
+        }
+        return true;
+    }
+
+    // never fails, the outcome goes to each caller
+    private Mono<Void> flush(List<PendingInsert> batch) {
+        var reviews = batch.stream()
+                .map(pendingInsert -> pendingInsert.review)
+                .collect(Collectors.toList());
+        batchSize.record(batch.size());
+        var sample = Timer.start(meterRegistry);
+        return reviewReactiveRepository.insertUnordered(reviews)
+                .doOnNext(errors -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        var error = errors.get(i);
+                        if (error == null) {
+                            batch.get(i).result.tryEmitValue(reviews.get(i));
+                        } else {
+                            batch.get(i).result.tryEmitError(error);
+                        }
+                    }
+                })
+                .onErrorResume(ex -> {
+                    log.error("Exception writing a batch of {} reviews : {}", batch.size(), ex.getMessage());
+                    batch.forEach(pendingInsert -> pendingInsert.result.tryEmitError(ex));
+                    return Mono.empty();
+                })
+                .doFinally(signalType -> {
+                    sample.stop(flushTimer);
+                    depth.addAndGet(-batch.size());
+                })
+                .then();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushSubscription != null) {
+            // what is already queued is still written
+            queue.emitComplete(RETRY_NON_SERIALIZED);
+        }
+    }
+
+    private static class PendingInsert {
+        private final Review review;
+        private final Sinks.One<Review> result = Sinks.one();
+
+        private PendingInsert(Review review) {
+            this.review = review;
+        }
+    }
+}
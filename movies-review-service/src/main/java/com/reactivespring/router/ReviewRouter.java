@@ -2,6 +2,7 @@ package com.reactivespring.router;
 
 import com.mongodb.internal.connection.Server;
 import com.reactivespring.handler.ReviewHandler;
+import com.reactivespring.handler.ReviewSummaryHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.server.RouterFunction;
@@ -14,14 +15,18 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 public class ReviewRouter {
 
     @Bean
-    public RouterFunction<ServerResponse> reviewRoute(ReviewHandler reviewHandler){
+    public RouterFunction<ServerResponse> reviewRoute(ReviewHandler reviewHandler, ReviewSummaryHandler reviewSummaryHandler){
 
         return route()
                 .nest(path("/v1/reviews"), builder -> {
                     builder.POST("", request -> reviewHandler.addReview(request))
                             .GET("", request -> reviewHandler.getReview(request))
+                            .GET("/byMovie", request -> reviewHandler.getReviewsByMovie(request))
                             .GET("/stream", request -> reviewHandler.getStreamReview(request))
+                            .GET("/summary", request -> reviewSummaryHandler.getSummary(request))
+                            .POST("/summary/rebuild", request -> reviewSummaryHandler.rebuildSummaries(request))
                             .PUT("/{id}", request -> reviewHandler.updateReview(request))
+                            .PATCH("/{id}", request -> reviewHandler.patchReview(request))
                             .DELETE("/{id}", request -> reviewHandler.deleteReview(request));
 
 
@@ -0,0 +1,126 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * One small replaying sink per key, e.g. per movie, so a value only reaches the subscribers of its own key.
+ * A topic is created by its first subscriber or publish, replays its last replaySize values to new subscribers,
+ * and is evicted once it had no subscriber for idleTimeout. Idle topics are swept on publish and subscribe.
+ */
+public class TopicRegistry<K, T> {
+
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final Map<K, Topic<T>> topics = new ConcurrentHashMap<>();
+    private final int replaySize;
+    private final long idleTimeoutNanos;
+    private final int maxTopics;
+    private final LongSupplier nanoTime;
+    private final AtomicLong lastSweep;
+    private final Counter evictedCounter;
+    private final Counter droppedCounter;
+
+    public TopicRegistry(String name, int replaySize, Duration idleTimeout, int maxTopics, MeterRegistry meterRegistry) {
+        this(name, replaySize, idleTimeout, maxTopics, meterRegistry, System::nanoTime);
+    }
+
+    TopicRegistry(String name, int replaySize, Duration idleTimeout, int maxTopics, MeterRegistry meterRegistry,
+                  LongSupplier nanoTime) {
+        this.replaySize = replaySize;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maxTopics = maxTopics;
+        this.nanoTime = nanoTime;
+        this.lastSweep = new AtomicLong(nanoTime.getAsLong());
+        Gauge.builder("stream.topics", topics, Map::size)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.evictedCounter = Counter.builder("stream.topics.evicted")
+                .tag("name", name)
+                .register(meterRegistry);
+        // values for a key nobody follows, published while maxTopics topics exist
+        this.droppedCounter = Counter.builder("stream.topics.dropped")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public void publish(K key, T value) {
+        sweepIfDue();
+        var topic = topics.get(key);
+        if (topic == null) {
+            if (topics.size() >= maxTopics) {
+                droppedCounter.increment();
+                return;
+            }
+            topic = topics.computeIfAbsent(key, k -> new Topic<>(replaySize, nanoTime.getAsLong()));
+        }
+        topic.sink.emitNext(value, RETRY_NON_SERIALIZED);
+    }
+
+    // the last replaySize values of the key, then every value published for it
+    public Flux<T> subscribe(K key) {
+        return Flux.defer(() -> {
+            sweepIfDue();
+            // counted under the map's lock for the key, so the sweep never evicts a topic that is being subscribed to
+            var topic = topics.compute(key, (k, existing) -> {
+                var subscribed = existing == null ? new Topic<T>(replaySize, nanoTime.getAsLong()) : existing;
+                subscribed.subscribers.incrementAndGet();
+                return subscribed;
+            });
+            return topic.sink.asFlux()
+                    .doFinally(signalType -> {
+                        topic.lastActive = nanoTime.getAsLong();
+                        topic.subscribers.decrementAndGet();
+                    });
+        });
+    }
+
+    public int size() {
+        return topics.size();
+    }
+
+    void sweep() {
+        var now = nanoTime.getAsLong();
+        for (var key : topics.keySet()) {
+            topics.computeIfPresent(key, (k, topic) -> {
+                if (topic.subscribers.get() > 0 || now - topic.lastActive < idleTimeoutNanos) {
+                    return topic;
+                }
+                evictedCounter.increment();
+                topic.sink.emitComplete(RETRY_NON_SERIALIZED);
+                return null;
+            });
+        }
+    }
+
+    private void sweepIfDue() {
+        var now = nanoTime.getAsLong();
+        var last = lastSweep.get();
+        // at most one sweep per idleTimeout, by whichever caller gets there first
+        if (now - last >= idleTimeoutNanos && lastSweep.compareAndSet(last, now)) {
+            sweep();
+        }
+    }
+
+    private static class Topic<T> {
+        private final Sinks.Many<T> sink;
+        private final AtomicInteger subscribers = new AtomicInteger();
+        private volatile long lastActive;
+
+        private Topic(int replaySize, long now) {
+            this.sink = Sinks.many().replay().limit(replaySize);
+            this.lastActive = now;
+        }
+    }
+}
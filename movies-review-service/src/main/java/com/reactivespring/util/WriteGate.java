@@ -0,0 +1,85 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.WritesPausedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets writes run concurrently with each other but not with an exclusive operation, such as a rebuild that reads
+ * what the writes wrote and overwrites what they derived from it. The exclusive operation starts once the writes
+ * in progress have finished, writes arriving meanwhile are rejected with {@link WritesPausedException} rather
+ * than queued behind it. Only the writes of this instance are held off.
+ */
+public class WriteGate {
+
+    private final String name;
+    private final Counter rejectedCounter;
+    private int writes;
+    private boolean closed;
+    private Sinks.Empty<Void> drained;
+
+    public WriteGate(String name, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.rejectedCounter = Counter.builder("write.gate.rejected")
+                .description("Writes rejected while an exclusive operation was waiting or running")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> write(Supplier<Mono<T>> write) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (closed) {
+                    rejectedCounter.increment();
+                    return Mono.error(new WritesPausedException(name + " writes are paused, retry later"));
+                }
+                writes++;
+            }
+            return Mono.defer(write).doFinally(signal -> release());
+        });
+    }
+
+    public <T> Mono<T> exclusive(Supplier<Mono<T>> operation) {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> idle = Sinks.empty();
+            boolean noWrites;
+            synchronized (this) {
+                if (closed) {
+                    return Mono.error(new WritesPausedException(name + " writes are already paused by another operation"));
+                }
+                closed = true;
+                drained = idle;
+                noWrites = writes == 0;
+            }
+            if (noWrites) {
+                idle.tryEmitEmpty();
+            }
+            return idle.asMono()
+                    .then(Mono.defer(operation))
+                    .doFinally(signal -> open());
+        });
+    }
+
+    private void release() {
+        Sinks.Empty<Void> idle = null;
+        synchronized (this) {
+            if (--writes == 0 && drained != null) {
+                idle = drained;
+                drained = null;
+            }
+        }
+        // outside the lock, it starts the exclusive operation
+        if (idle != null) {
+            idle.tryEmitEmpty();
+        }
+    }
+
+    private synchronized void open() {
+        closed = false;
+        drained = null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.IdempotencyRecord;
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataMongoTest
+@ActiveProfiles("test")
+class MongoIdempotencyPersistenceTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    MongoIdempotencyPersistence<Review> persistence;
+
+    @BeforeEach
+    void setUp() {
+        persistence = new MongoIdempotencyPersistence<>(reactiveMongoTemplate, Review.class,
+                Duration.ofHours(24), Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reactiveMongoTemplate.dropCollection(IdempotencyRecord.class).block();
+    }
+
+    @Test
+    void onlyTheFirstClaimWins() {
+        StepVerifier.create(persistence.claim("abc", "fp"))
+                .verifyComplete();
+
+        StepVerifier.create(persistence.claim("abc", "fp"))
+                .assertNext(stored -> {
+                    assertEquals("fp", stored.getFingerprint());
+                    assertNull(stored.getResponse());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void completedClaimIsFoundWithItsResponse() {
+        persistence.claim("abc", "fp").block();
+        persistence.complete("abc", new Review("1", 1L, "Awesome Movie", 9.0)).block();
+        // a completed claim is not released by a late failure
+        persistence.release("abc").block();
+
+        StepVerifier.create(persistence.find("abc"))
+                .assertNext(stored -> assertEquals("Awesome Movie", stored.getResponse().getComment()))
+                .verifyComplete();
+    }
+
+    @Test
+    void releasedClaimCanBeClaimedAgain() {
+        persistence.claim("abc", "fp").block();
+        persistence.release("abc").block();
+
+        StepVerifier.create(persistence.claim("abc", "fp"))
+                .verifyComplete();
+    }
+
+    @Test
+    void abandonedClaimIsTakenOver() {
+        reactiveMongoTemplate.insert(new IdempotencyRecord("abc", "fp", null, Instant.now().minus(Duration.ofMinutes(1))))
+                .block();
+
+        StepVerifier.create(persistence.claim("abc", "other"))
+                .verifyComplete();
+        StepVerifier.create(persistence.find("abc"))
+                .assertNext(stored -> assertEquals("other", stored.getFingerprint()))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,103 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs every filtered Review query with the profiler on and fails on any query that was answered by a collection scan.
+ */
+@DataMongoTest
+@ActiveProfiles("test")
+class ReviewQueryPlanTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    QueryPlanProfiler queryPlanProfiler;
+
+    @BeforeEach
+    void setUp() {
+        new MongoIndexInitializer(reactiveMongoTemplate, List.of(Review.class)).ensureIndexes().blockLast();
+        var reviewsList = List.of(
+                new Review("1", 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+        reviewReactiveRepository.saveAll(reviewsList).blockLast();
+        queryPlanProfiler = new QueryPlanProfiler(reactiveMongoTemplate);
+        queryPlanProfiler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        queryPlanProfiler.stop();
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void derivedQueriesUseAnIndex() {
+        reviewReactiveRepository.findReviewsByMovieInfoId(1L).blockLast();
+        reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L)).blockLast();
+
+        queryPlanProfiler.assertNoCollectionScan(Review.class);
+    }
+
+    @Test
+    void handlerQueriesUseAnIndex() {
+        reviewReactiveRepository.findWithDeadline(query(where("movieInfoId").is(1L))).blockLast();
+        reviewReactiveRepository.findWithDeadline(query(where("movieInfoId").in(1L, 2L))).blockLast();
+        reviewReactiveRepository.findById("1").block();
+        for (var sortBy : ReviewCursor.SortBy.values()) {
+            var first = ReviewCursor.first(sortBy);
+            var page = reviewReactiveRepository.findPage(where("movieInfoId").is(1L), first, 1, List.of())
+                    .collectList().block();
+            reviewReactiveRepository.findPage(where("movieInfoId").is(1L), first.next(page.get(0)), 1, List.of())
+                    .blockLast();
+            reviewReactiveRepository.findPage(new Criteria(), first, 1, List.of()).blockLast();
+            reviewReactiveRepository.findTopPerMovie(List.of(1L, 2L), sortBy, 1, List.of()).blockLast();
+        }
+
+        queryPlanProfiler.assertNoCollectionScan(Review.class);
+    }
+
+    @Test
+    void supersededIndexIsDropped() {
+        reactiveMongoTemplate.indexOps(Review.class)
+                .ensureIndex(new Index().on("movieInfoId", Sort.Direction.ASC).named("movieInfoId"))
+                .block();
+        var indexInitializer = new MongoIndexInitializer(reactiveMongoTemplate, List.of(Review.class),
+                Map.of(Review.class, List.of("movieInfoId")));
+
+        indexInitializer.ensureIndexes().blockLast();
+        // already gone on the next startup
+        indexInitializer.ensureIndexes().blockLast();
+
+        var indexNames = reactiveMongoTemplate.indexOps(Review.class)
+                .getIndexInfo()
+                .map(IndexInfo::getName)
+                .collectList()
+                .block();
+        assertFalse(indexNames.contains("movieInfoId"));
+        assertTrue(indexNames.contains("movieInfoId_id"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.WriteQueueFullException;
+import com.reactivespring.exception.WritesPausedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@TestPropertySource(properties = {
+        "reviews.writeBatching.enabled=true",
+        "reviews.writeBatching.maxBatchSize=5",
+        "reviews.writeBatching.maxDelay=100ms",
+        "reviews.writeBatching.maxQueueDepth=5",
+})
+class ReviewWriteBatcherTest {
+
+    @Autowired
+    ReviewWriteBatcher reviewWriteBatcher;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        reviewReactiveRepository.save(new Review("1", 1L, "Awesome Movie", 9.0)).block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void insertsConcurrentReviewsInOneBatch() {
+        var batchesBefore = meterRegistry.get("reviews.write.batch.size").summary().count();
+
+        var inserted = Flux.range(0, 5)
+                .flatMap(i -> reviewWriteBatcher.insert(new Review(null, 2L, "Review " + i, 8.0)))
+                .collectList()
+                .block();
+
+        assertEquals(5, inserted.size());
+        inserted.forEach(review -> {
+            assertNotNull(review.getReviewId());
+            assertEquals(0L, review.getVersion());
+        });
+        assertEquals(5L, reviewReactiveRepository.findReviewsByMovieInfoId(2L).count().block());
+        assertEquals(batchesBefore + 1, meterRegistry.get("reviews.write.batch.size").summary().count());
+    }
+
+    @Test
+    void failsOnlyTheDuplicateOfABatch() {
+        var results = Flux.just(new Review("1", 1L, "Duplicate", 7.0), new Review(null, 1L, "New", 7.0))
+                .flatMapSequential(review -> reviewWriteBatcher.insert(review)
+                        .map(Object.class::cast)
+                        .onErrorResume(Mono::just))
+                .collectList()
+                .block();
+
+        assertTrue(results.get(0) instanceof DuplicateKeyException);
+        assertEquals("New", ((Review) results.get(1)).getComment());
+    }
+
+    @Test
+    void rejectsBeyondQueueDepth() {
+        var rejectedBefore = meterRegistry.get("reviews.write.rejected").counter().count();
+
+        List<Object> results = Flux.range(0, 8)
+                .flatMap(i -> reviewWriteBatcher.insert(new Review(null, 3L, "Review " + i, 8.0))
+                        .map(Object.class::cast)
+                        .onErrorResume(Mono::just))
+                .collectList()
+                .block();
+
+        var rejected = results.stream()
+                .filter(WriteQueueFullException.class::isInstance)
+                .collect(Collectors.toList());
+        assertEquals(3, rejected.size());
+        assertEquals(rejectedBefore + 3, meterRegistry.get("reviews.write.rejected").counter().count());
+    }
+
+    @Test
+    void insertAfterStopFailsImmediately() {
+        var stoppedMeterRegistry = new SimpleMeterRegistry();
+        var stoppedBatcher = new ReviewWriteBatcher(reviewReactiveRepository, stoppedMeterRegistry,
+                true, 5, Duration.ofMillis(100), 5, 2);
+        stoppedBatcher.stop();
+
+        StepVerifier.create(stoppedBatcher.insert(new Review(null, 5L, "Too late", 8.0)))
+                .expectError(WritesPausedException.class)
+                .verify(Duration.ofSeconds(1));
+        assertEquals(0.0, stoppedMeterRegistry.get("reviews.write.queue.depth").gauge().value());
+    }
+
+    @Test
+    void addReviewIsCreated() {
+        webTestClient
+                .post()
+                .uri("/v1/reviews")
+                .bodyValue(new Review(null, 4L, "Good Movie", 8.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .value(review -> assertNotNull(review.getReviewId()));
+    }
+}
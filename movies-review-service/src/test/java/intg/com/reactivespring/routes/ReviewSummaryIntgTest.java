@@ -0,0 +1,178 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class ReviewSummaryIntgTest {
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewSummaryRepository reviewSummaryRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    String REVIEWS_URL = "/v1/reviews";
+    String SUMMARY_URL = "/v1/reviews/summary";
+
+    @BeforeEach
+    void setup(){
+        var reviewsList = List.of(
+                new Review("1", 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.5),
+                new Review(null, 2L, "Excellent Movie", 8.0),
+                new Review(null, 2L, "No rating", null));
+        reviewReactiveRepository.saveAll(reviewsList)
+                .blockLast();
+        // written straight to the repository, so the summaries have to be built
+        reviewSummaryRepository.rebuild().block();
+    }
+    @AfterEach
+    void teardown(){
+        reviewReactiveRepository.deleteAll().block();
+        reviewSummaryRepository.deleteAll().block();
+    }
+
+    @Test
+    void getSummary(){
+        var summary = getSummary(1L);
+
+        assertEquals(2, summary.getCount());
+        assertEquals(18.5, summary.getSum());
+        assertEquals(9.25, summary.getAverage());
+        assertEquals(Map.of("9", 2L), summary.getHistogram());
+    }
+
+    @Test
+    void getSummary_noReviews(){
+        var summary = getSummary(5L);
+
+        assertEquals(0, summary.getCount());
+        assertNull(summary.getAverage());
+    }
+
+    @Test
+    void getSummaries(){
+        webTestClient
+                .get()
+                .uri(SUMMARY_URL + "?movieInfoIds=2,5")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(ReviewSummary.class)
+                .consumeWith(result -> {
+                    var summaries = result.getResponseBody();
+                    assertEquals(2, summaries.size());
+                    assertEquals(2L, summaries.get(0).getMovieInfoId());
+                    // the review without a rating is not counted
+                    assertEquals(1, summaries.get(0).getCount());
+                    assertEquals(5L, summaries.get(1).getMovieInfoId());
+                    assertEquals(0, summaries.get(1).getCount());
+                });
+    }
+
+    @Test
+    void addReview_updatesSummary(){
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review(null, 1L, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        var summary = getSummary(1L);
+        assertEquals(3, summary.getCount());
+        assertEquals(25.5, summary.getSum());
+        assertEquals(Map.of("9", 2L, "7", 1L), summary.getHistogram());
+    }
+
+    @Test
+    void patchReview_movesRatingBetweenBuckets(){
+        var patch = new Review();
+        patch.setRating(7.5);
+
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL + "/{id}", "1")
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        var summary = getSummary(1L);
+        assertEquals(2, summary.getCount());
+        assertEquals(17.0, summary.getSum());
+        assertEquals(Map.of("9", 1L, "7", 1L), summary.getHistogram());
+    }
+
+    @Test
+    void deleteReview_updatesSummaryOnce(){
+        for (int i = 0; i < 2; i++) {
+            webTestClient
+                    .delete()
+                    .uri(REVIEWS_URL + "/{id}", "1")
+                    .exchange()
+                    .expectStatus()
+                    .isNoContent();
+        }
+
+        var summary = getSummary(1L);
+        assertEquals(1, summary.getCount());
+        assertEquals(9.5, summary.getSum());
+    }
+
+    @Test
+    void rebuild(){
+        var histogram = new HashMap<String, Long>();
+        histogram.put("1", 1L);
+        reviewSummaryRepository.save(new ReviewSummary(1L, 1, 1.0, histogram)).block();
+        reviewSummaryRepository.save(new ReviewSummary(99L, 1, 1.0, histogram)).block();
+
+        webTestClient
+                .post()
+                .uri(SUMMARY_URL + "/rebuild")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.summaries").isEqualTo(2);
+
+        assertEquals(2, getSummary(1L).getCount());
+        assertFalse(reviewSummaryRepository.existsById(99L).block());
+    }
+
+    private ReviewSummary getSummary(Long movieInfoId) {
+        return webTestClient
+                .get()
+                .uri(SUMMARY_URL + "?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(ReviewSummary.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
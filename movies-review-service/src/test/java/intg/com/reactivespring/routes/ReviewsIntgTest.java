@@ -1,18 +1,28 @@
 package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.util.Deadline;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -27,6 +37,9 @@ public class ReviewsIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
     String REVIEWS_URL = "/v1/reviews";
     @BeforeEach
     void setup(){
@@ -86,6 +99,61 @@ public class ReviewsIntgTest {
                     assertEquals("Good Movie", updatedReview.getComment());
                 });
     }
+    @Test
+    void patchReview(){
+        var version = reviewReactiveRepository.findById("1").block().getVersion();
+        var patch = new Review();
+        patch.setRating(7.5);
+        patch.setVersion(version);
+
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL + "/{id}", "1")
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(Review.class)
+                .consumeWith(reviewEntityExchangeResult -> {
+                    var patchedReview = reviewEntityExchangeResult.getResponseBody();
+                    assertNotNull(patchedReview);
+                    assertEquals(7.5, patchedReview.getRating());
+                    assertEquals("Awesome Movie", patchedReview.getComment());
+                    assertEquals(version + 1, patchedReview.getVersion());
+                });
+
+        // still at the version read before the first patch
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL + "/{id}", "1")
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(409);
+    }
+
+    @Test
+    void patchReview_invalid(){
+        var patch = new Review();
+        patch.setRating(-1.0);
+
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL + "/{id}", "1")
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL + "/{id}", "unknown")
+                .bodyValue(new Review(null, null, "Good Movie", null))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void deleteReview(){
         var reviewId = "1";
@@ -111,5 +179,222 @@ public class ReviewsIntgTest {
                 .expectBodyList(Review.class)
                 .hasSize(2);
     }
+    @Test
+    void getReviewByMovieInfoIds(){
+        var URL = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("movieInfoIds", "1,2,3")
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(URL)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(3);
+    }
+
+    @Test
+    void getReview_pagedNewestFirst(){
+        var reviewIds = new ArrayList<String>();
+        String after = null;
+        do {
+            var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                    .queryParam("limit", 1);
+            if (after != null) {
+                uri.queryParam("after", after);
+            }
+            var result = webTestClient
+                    .get()
+                    .uri(uri.buildAndExpand().toUri())
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .expectBodyList(Review.class)
+                    .hasSize(1)
+                    .returnResult();
+            reviewIds.add(result.getResponseBody().get(0).getReviewId());
+            after = result.getResponseHeaders().getFirst(ReviewHandler.NEXT_CURSOR_HEADER);
+        } while (after != null);
+
+        assertEquals(3, reviewIds.size());
+        assertEquals(3, new HashSet<>(reviewIds).size());
+        // generated ObjectIds are newer than the string id "1"
+        assertEquals("1", reviewIds.get(2));
+    }
+
+    @Test
+    void getReview_pagedByRating(){
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("sort", "rating")
+                .queryParam("limit", 2)
+                .buildAndExpand().toUri();
+        var result = webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .returnResult();
+        var firstPage = result.getResponseBody();
+        assertEquals(List.of(9.0, 9.0), firstPage.stream().map(Review::getRating).collect(Collectors.toList()));
+
+        var next = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("limit", 2)
+                .queryParam("after", result.getResponseHeaders().getFirst(ReviewHandler.NEXT_CURSOR_HEADER))
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(next)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(ReviewHandler.NEXT_CURSOR_HEADER)
+                .expectBodyList(Review.class)
+                .value(secondPage -> {
+                    assertEquals(1, secondPage.size());
+                    assertEquals(8.0, secondPage.get(0).getRating());
+                });
+    }
 
+    @Test
+    void getReview_invalidPageRequest(){
+        for (var param : List.of("limit=0", "limit=ten", "sort=oldest", "after=not*a*cursor")) {
+            webTestClient
+                    .get()
+                    .uri(REVIEWS_URL + "?" + param)
+                    .exchange()
+                    .expectStatus()
+                    .isBadRequest();
+        }
+    }
+
+    @Test
+    void getReviewsByMovie(){
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL + "/byMovie")
+                .queryParam("movieInfoIds", "2,1,3")
+                .queryParam("perMovie", 1)
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(new ParameterizedTypeReference<LinkedHashMap<Long, List<Review>>>() {})
+                .value(reviewsByMovie -> {
+                    assertEquals(List.of(2L, 1L, 3L), new ArrayList<>(reviewsByMovie.keySet()));
+                    assertEquals(1, reviewsByMovie.get(2L).size());
+                    // capped at one of its two reviews
+                    assertEquals(1, reviewsByMovie.get(1L).size());
+                    assertEquals(0, reviewsByMovie.get(3L).size());
+                });
+    }
+
+    @Test
+    void getReviewsByMovie_withoutIds(){
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/byMovie")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getStreamReview_byMovieInfoId(){
+        for (var review : List.of(new Review(null, 70L, "Good Movie", 8.0), new Review(null, 71L, "Bad Movie", 2.0))) {
+            webTestClient
+                    .post()
+                    .uri(REVIEWS_URL)
+                    .bodyValue(review)
+                    .exchange()
+                    .expectStatus()
+                    .isCreated();
+        }
+
+        var reviews = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=70")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        // replayed from the topic of movie 70, the review of movie 71 never reaches it
+        StepVerifier.create(reviews)
+                .assertNext(review -> assertEquals("Good Movie", review.getComment()))
+                .expectNoEvent(Duration.ofMillis(200))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getReviewByMovieInfoId_withFields(){
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("movieInfoId", 2)
+                .queryParam("fields", "rating")
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].reviewId").exists()
+                .jsonPath("$[0].rating").isEqualTo(8.0)
+                .jsonPath("$[0].comment").doesNotExist()
+                .jsonPath("$[0].movieInfoId").doesNotExist();
+    }
+
+    @Test
+    void getReview_unknownField(){
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("fields", "author")
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewByMovieInfoId_withDeadline(){
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("movieInfoId", 1)
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .header(Deadline.HEADER, "2000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewByMovieInfoId_deadlineExceeded(){
+        var exceededBefore = meterRegistry.counter("deadline.exceeded", "stage", "mongo").count();
+        var uri = UriComponentsBuilder.fromUriString(REVIEWS_URL)
+                .queryParam("movieInfoId", 1)
+                .buildAndExpand().toUri();
+        webTestClient
+                .get()
+                .uri(uri)
+                .header(Deadline.HEADER, "0")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(504);
+
+        assertEquals(exceededBefore + 1, meterRegistry.counter("deadline.exceeded", "stage", "mongo").count());
+    }
 }
@@ -1,10 +1,18 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.config.IdempotencyConfig;
+import com.reactivespring.config.StreamConfig;
+import com.reactivespring.config.SummaryConfig;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
+import com.reactivespring.handler.ReviewSummaryHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSummaryRepository;
+import com.reactivespring.repository.ReviewWriteBatcher;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.util.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -17,15 +25,21 @@ import reactor.core.publisher.Mono;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, ReviewSummaryHandler.class, ReviewWriteBatcher.class, StreamConfig.class, IdempotencyConfig.class, SummaryConfig.class, GlobalErrorHandler.class,
+        SimpleMeterRegistry.class})
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewSummaryRepository reviewSummaryRepository;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -36,6 +50,7 @@ public class ReviewsUnitTest {
         var review = new Review(null, 1L, "Awesome Movie", 9.0);
         when(reviewReactiveRepository.save(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewSummaryRepository.applyRatingChange(1L, null, 9.0)).thenReturn(Mono.empty());
 
         webTestClient
                 .post()
@@ -51,6 +66,56 @@ public class ReviewsUnitTest {
                     assertEquals("Awesome Movie", savedReview.getComment());
                 });
     }
+    @Test
+    void addReview_idempotencyKey(){
+        var review = new Review(null, 2L, "Awesome Movie", 9.0);
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.just(new Review("abc", 2L, "Awesome Movie", 9.0)));
+        when(reviewSummaryRepository.applyRatingChange(2L, null, 9.0)).thenReturn(Mono.empty());
+
+        for (var replayed : new String[]{"false", "true"}) {
+            webTestClient
+                    .post()
+                    .uri(REVIEWS_URL)
+                    .header(IdempotencyStore.HEADER, "review-abc")
+                    .bodyValue(review)
+                    .exchange()
+                    .expectStatus()
+                    .isCreated()
+                    .expectHeader()
+                    .valueEquals(IdempotencyStore.REPLAYED_HEADER, replayed)
+                    .expectBody(Review.class)
+                    .consumeWith(reviewEntityExchangeResult -> assertEquals("abc", reviewEntityExchangeResult.getResponseBody().getReviewId()));
+        }
+
+        verify(reviewReactiveRepository, times(1)).save(isA(Review.class));
+    }
+
+    @Test
+    void addReview_idempotencyKeyReusedForAnotherReview(){
+        when(reviewReactiveRepository.save(isA(Review.class)))
+                .thenReturn(Mono.just(new Review("def", 3L, "Awesome Movie", 9.0)));
+        when(reviewSummaryRepository.applyRatingChange(3L, null, 9.0)).thenReturn(Mono.empty());
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .header(IdempotencyStore.HEADER, "review-def")
+                .bodyValue(new Review(null, 3L, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .header(IdempotencyStore.HEADER, "review-def")
+                .bodyValue(new Review(null, 3L, "Bad Movie", 2.0))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(422);
+    }
+
     @Test
     void addReviewValidation(){
         var review = new Review(null, null, "Awesome Movie", -9.0);
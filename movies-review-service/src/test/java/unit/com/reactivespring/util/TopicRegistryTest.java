@@ -0,0 +1,78 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopicRegistryTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicLong now;
+    TopicRegistry<Long, String> topics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong();
+        topics = new TopicRegistry<>("reviews", 2, Duration.ofMinutes(1), 2, meterRegistry, now::get);
+    }
+
+    @Test
+    void deliversOnlyTheSubscribedKey() {
+        StepVerifier.create(topics.subscribe(1L))
+                .then(() -> {
+                    topics.publish(2L, "Bad Movie");
+                    topics.publish(1L, "Good Movie");
+                })
+                .expectNext("Good Movie")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void replaysTheLastValuesOfTheKey() {
+        topics.publish(1L, "Awesome Movie");
+        topics.publish(1L, "Excellent Movie");
+        topics.publish(1L, "Good Movie");
+
+        StepVerifier.create(topics.subscribe(1L))
+                .expectNext("Excellent Movie", "Good Movie")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void evictsIdleTopics() {
+        topics.publish(1L, "Awesome Movie");
+        var subscription = topics.subscribe(2L).subscribe();
+
+        now.addAndGet(Duration.ofMinutes(2).toNanos());
+        topics.sweep();
+
+        // topic 2 still has its subscriber
+        assertEquals(1, topics.size());
+        assertEquals(1.0, meterRegistry.get("stream.topics.evicted").counter().count());
+
+        subscription.dispose();
+        now.addAndGet(Duration.ofMinutes(2).toNanos());
+        topics.sweep();
+
+        assertEquals(0, topics.size());
+    }
+
+    @Test
+    void dropsValuesForNewKeysBeyondMaxTopics() {
+        topics.publish(1L, "Awesome Movie");
+        topics.publish(2L, "Excellent Movie");
+        topics.publish(3L, "Good Movie");
+
+        assertEquals(2, topics.size());
+        assertEquals(1.0, meterRegistry.get("stream.topics.dropped").counter().count());
+    }
+}
@@ -0,0 +1,77 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.WritesPausedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteGateTest {
+
+    SimpleMeterRegistry meterRegistry;
+    WriteGate gate;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        gate = new WriteGate("reviews", meterRegistry);
+    }
+
+    @Test
+    void exclusiveWaitsForTheWritesInProgress() {
+        var write = Sinks.<String>one();
+        var started = new AtomicBoolean();
+        var pendingWrite = gate.write(write::asMono).toFuture();
+
+        var rebuild = gate.exclusive(() -> {
+            started.set(true);
+            return Mono.just(2L);
+        }).toFuture();
+
+        assertFalse(started.get());
+        write.tryEmitValue("Awesome Movie");
+
+        assertEquals("Awesome Movie", pendingWrite.join());
+        assertEquals(2L, rebuild.join());
+        assertTrue(started.get());
+    }
+
+    @Test
+    void writesAreRejectedWhileExclusive() {
+        var rebuild = Sinks.<Long>one();
+        var pendingRebuild = gate.exclusive(rebuild::asMono).toFuture();
+
+        StepVerifier.create(gate.write(() -> Mono.just("Awesome Movie")))
+                .expectError(WritesPausedException.class)
+                .verify();
+        StepVerifier.create(gate.exclusive(() -> Mono.just(1L)))
+                .expectError(WritesPausedException.class)
+                .verify();
+
+        rebuild.tryEmitValue(2L);
+        assertEquals(2L, pendingRebuild.join());
+        StepVerifier.create(gate.write(() -> Mono.just("Awesome Movie")))
+                .expectNext("Awesome Movie")
+                .verifyComplete();
+        assertEquals(1.0, meterRegistry.get("write.gate.rejected").counter().count());
+    }
+
+    @Test
+    void failedExclusiveReopens() {
+        StepVerifier.create(gate.exclusive(() -> Mono.error(new RuntimeException("Mongo down"))))
+                .expectErrorMessage("Mongo down")
+                .verify();
+
+        StepVerifier.create(gate.write(() -> Mono.just("Awesome Movie")))
+                .expectNext("Awesome Movie")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,71 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.MovieInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.util.ReactiveCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+@Component
+@Slf4j
+public class MovieInfoCache {
+
+    private MovieInfoRestClient movieInfoRestClient;
+    private ReactiveCache<String, MovieInfo> cache;
+    private boolean enabled;
+    private Disposable invalidationSubscription;
+
+    public MovieInfoCache(MovieInfoRestClient movieInfoRestClient, MeterRegistry meterRegistry,
+                          @Value("${restClient.cache.enabled:true}") boolean enabled,
+                          @Value("${restClient.cache.maximumSize:10000}") int maximumSize,
+                          @Value("${restClient.cache.ttl:10m}") Duration ttl,
+                          @Value("${restClient.cache.eviction:lru}") ReactiveCache.EvictionPolicy evictionPolicy) {
+        this.movieInfoRestClient = movieInfoRestClient;
+        this.enabled = enabled;
+        this.cache = new ReactiveCache<>("movieInfo", maximumSize, ttl, evictionPolicy, meterRegistry);
+    }
+
+    public Mono<MovieInfo> retrieveMovieInfoById(String movieId) {
+        if (!enabled) {
+            return movieInfoRestClient.retrieveMovieInfoById(movieId);
+        }
+        return cache.get(movieId, movieInfoRestClient::retrieveMovieInfoById);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeToInvalidations() {
+        if (!enabled) {
+            return;
+        }
+        // anything published while disconnected is unknown, so every (re)subscription starts from an empty cache
+        invalidationSubscription = movieInfoRestClient.retrieveMovieInfoStream()
+                .doOnSubscribe(subscription -> cache.invalidateAll())
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(retrySignal -> log.warn("MovieInfo stream disconnected, resubscribing : {}",
+                                retrySignal.failure().getMessage())))
+                .subscribe(movieInfo -> {
+                    if (movieInfo.getMovieInfoId() != null) {
+                        cache.invalidate(movieInfo.getMovieInfoId());
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void unsubscribeFromInvalidations() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+}
@@ -1,20 +1,35 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.RequestHedger;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -22,21 +37,48 @@ public class MovieInfoRestClient {
 
 
     private WebClient webClient;
+    private Duration responseTimeout;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private CircuitBreaker circuitBreaker;
+    private RequestHedger requestHedger;
+    private Counter deadlineExceededCounter;
 
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
-    public  MovieInfoRestClient(WebClient webClient){
+    public  MovieInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient,
+                                RestClientProperties restClientProperties, MeterRegistry meterRegistry,
+                                CircuitBreakerRegistry circuitBreakerRegistry){
         this.webClient = webClient;
+        var downstream = restClientProperties.getMoviesInfo();
+        this.responseTimeout = downstream.getResponseTimeout();
+        var retryProperties = downstream.getRetry();
+        this.retryBudget = new RetryBudget(retryProperties.getBudgetRatio(),
+                retryProperties.getBudgetMinRetriesPerSecond(), retryProperties.getBudgetCapacity());
+        this.retrySpec = RetryUtil.retrySpec("moviesInfo", retryProperties, retryBudget, meterRegistry);
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(ResilienceConfig.MOVIES_INFO);
+        this.requestHedger = new RequestHedger("moviesInfo", downstream.getHedge(), meterRegistry);
+        this.deadlineExceededCounter = Deadline.exceededCounter("moviesInfo", meterRegistry);
     }
 
     public Mono<MovieInfo> retrieveMovieInfoById(String movieId){
 
+        return requestHedger.hedge(() -> requestMovieInfoById(movieId))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(movieInfo -> Deadline.enforce(movieInfo, "moviesInfo", deadlineExceededCounter))
+                .log();
+    }
+
+    private Mono<MovieInfo> requestMovieInfoById(String movieId){
 
         var url = moviesInfoUrl.concat("/{id}");
         return webClient
                 .get()
                 .uri(url, movieId)
+                .httpRequest(this::applyResponseTimeout)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is : {}" + clientResponse.statusCode().value());
@@ -57,8 +99,36 @@ public class MovieInfoRestClient {
                             )));
                 })
 
-                .bodyToMono(MovieInfo.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .bodyToMono(MovieInfo.class);
+    }
+
+    public Flux<MovieInfo> retrieveMovieInfoByIds(List<String> movieIds){
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoUrl)
+                .queryParam("ids", String.join(",", movieIds))
+                .buildAndExpand()
+                .toUriString();
+
+        return webClient
+                .get()
+                .uri(url)
+                .httpRequest(this::applyResponseTimeout)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                    responseMessage, clientResponse.statusCode().value())));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(responseMessage)));
+                })
+                .bodyToFlux(MovieInfo.class)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(movieInfos -> Deadline.enforce(movieInfos, "moviesInfo", deadlineExceededCounter))
                 .log();
     }
 
@@ -83,7 +153,14 @@ public class MovieInfoRestClient {
                 })
 
                 .bodyToFlux(MovieInfo.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
                 .log();
     }
+
+    // the stream is long-lived, so only the request/response calls get a response timeout
+    private void applyResponseTimeout(ClientHttpRequest httpRequest) {
+        HttpClientRequest reactorRequest = httpRequest.getNativeRequest();
+        reactorRequest.responseTimeout(responseTimeout);
+    }
 }
@@ -1,42 +1,121 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.RequestHedger;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 @Component
 @Slf4j
 public class ReviewRestClient {
 
+    private static final ParameterizedTypeReference<Map<String, List<Review>>> REVIEWS_BY_MOVIE =
+            new ParameterizedTypeReference<>() {};
+
     private WebClient webClient;
+    private Duration responseTimeout;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private CircuitBreaker circuitBreaker;
+    private RequestHedger requestHedger;
+    private Counter deadlineExceededCounter;
 
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
-    public ReviewRestClient(WebClient webClient){
+    public ReviewRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                            RestClientProperties restClientProperties, MeterRegistry meterRegistry,
+                            CircuitBreakerRegistry circuitBreakerRegistry){
         this.webClient = webClient;
+        var downstream = restClientProperties.getReviews();
+        this.responseTimeout = downstream.getResponseTimeout();
+        var retryProperties = downstream.getRetry();
+        this.retryBudget = new RetryBudget(retryProperties.getBudgetRatio(),
+                retryProperties.getBudgetMinRetriesPerSecond(), retryProperties.getBudgetCapacity());
+        this.retrySpec = RetryUtil.retrySpec("reviews", retryProperties, retryBudget, meterRegistry);
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(ResilienceConfig.REVIEWS);
+        this.requestHedger = new RequestHedger("reviews", downstream.getHedge(), meterRegistry);
+        this.deadlineExceededCounter = Deadline.exceededCounter("reviews", meterRegistry);
     }
 
-    public Flux<Review> retrieveReviews(String movieId){
+    // the first limit reviews in sort order (newest or rating), i.e. one page of the reviews service
+    public Flux<Review> retrieveReviews(String movieId, int limit, String sort){
         var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
                 .queryParam("movieInfoId", movieId)
+                .queryParam("limit", limit)
+                .queryParam("sort", sort)
+                .buildAndExpand()
+                .toUriString();
+
+        return withResilience(requestHedger.hedgeMany(() -> requestReviews(url)));
+    }
+
+    // the first perMovie reviews in sort order of every movie in one call, keyed by movieInfoId
+    public Mono<Map<String, List<Review>>> retrieveReviewsByMovie(List<String> movieIds, int perMovie, String sort){
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .pathSegment("byMovie")
+                .queryParam("movieInfoIds", String.join(",", movieIds))
+                .queryParam("perMovie", perMovie)
+                .queryParam("sort", sort)
                 .buildAndExpand()
                 .toUriString();
 
+        return retrieve(url)
+                .bodyToMono(REVIEWS_BY_MOVIE)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(reviewsByMovie -> Deadline.enforce(reviewsByMovie, "reviews", deadlineExceededCounter));
+    }
+
+    private Flux<Review> withResilience(Flux<Review> reviews){
+        return reviews
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(reviewFlux -> Deadline.enforce(reviewFlux, "reviews", deadlineExceededCounter))
+                .log();
+    }
+
+    private Flux<Review> requestReviews(String url){
+        return retrieve(url)
+                .bodyToFlux(Review.class);
+    }
+
+    private WebClient.ResponseSpec retrieve(String url){
         return webClient
                 .get()
                 .uri(url)
+                .httpRequest(this::applyResponseTimeout)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is : {}", clientResponse.statusCode().value());
@@ -52,9 +131,11 @@ public class ReviewRestClient {
                     log.info("Status code is : {}",  clientResponse.statusCode().value());
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responseMessage -> Mono.error(new ReviewsServerException(responseMessage)));
-                })
-                .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec())
-                .log();
+                });
+    }
+
+    private void applyResponseTimeout(ClientHttpRequest httpRequest) {
+        HttpClientRequest reactorRequest = httpRequest.getNativeRequest();
+        reactorRequest.responseTimeout(responseTimeout);
     }
 }
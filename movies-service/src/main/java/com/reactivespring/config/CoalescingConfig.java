@@ -0,0 +1,18 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.Movie;
+import com.reactivespring.util.RequestCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CoalescingConfig {
+
+    @Bean
+    public RequestCoalescer<String, Movie> movieCoalescer(MeterRegistry meterRegistry,
+                                                          @Value("${restClient.coalescing.maxKeys:10000}") int maxKeys){
+        return new RequestCoalescer<>("movie", maxKeys, meterRegistry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.reactivespring.config;
+
+import com.reactivespring.filter.DeadlineWebFilter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(DeadlineProperties.class)
+public class DeadlineConfig {
+
+    @Bean
+    public DeadlineWebFilter deadlineWebFilter(DeadlineProperties deadlineProperties){
+        return new DeadlineWebFilter(deadlineProperties.getMax(), deadlineProperties.getRoutes());
+    }
+}
@@ -0,0 +1,18 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "deadline")
+public class DeadlineProperties {
+
+    // upper bound for a deadline passed in by the caller
+    private Duration max = Duration.ofSeconds(30);
+    // path pattern -> end-to-end budget, the first matching pattern wins and 0 means no deadline
+    private Map<String, Duration> routes = new LinkedHashMap<>();
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsClientException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ResilienceConfig {
+
+    public static final String MOVIES_INFO = "moviesInfo";
+    public static final String REVIEWS = "reviews";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(RestClientProperties restClientProperties,
+                                                         MeterRegistry meterRegistry){
+        var circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        circuitBreakerRegistry.circuitBreaker(MOVIES_INFO,
+                circuitBreakerConfig(restClientProperties.getMoviesInfo().getCircuitBreaker()));
+        circuitBreakerRegistry.circuitBreaker(REVIEWS,
+                circuitBreakerConfig(restClientProperties.getReviews().getCircuitBreaker()));
+
+        // resilience4j.circuitbreaker.state, .calls, .failure.rate and .slow.call.rate per breaker
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry)
+                .bindTo(meterRegistry);
+        return circuitBreakerRegistry;
+    }
+
+    private CircuitBreakerConfig circuitBreakerConfig(RestClientProperties.CircuitBreaker circuitBreaker){
+        return CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+                .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+                .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+                .slowCallRateThreshold(circuitBreaker.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(circuitBreaker.getSlowCallDurationThreshold())
+                .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // 4xx responses and our own expired deadlines say nothing about the health of the downstream
+                .ignoreExceptions(MoviesInfoClientException.class, ReviewsClientException.class,
+                        DeadlineExceededException.class)
+                .build();
+    }
+}
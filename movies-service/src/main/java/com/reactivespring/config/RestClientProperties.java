@@ -0,0 +1,70 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "rest-client")
+public class RestClientProperties {
+
+    private Downstream moviesInfo = new Downstream();
+    private Downstream reviews = new Downstream();
+
+    @Data
+    public static class Downstream {
+        // prior-knowledge h2c, the downstream service has to run with server.http2.enabled
+        private boolean http2 = false;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        private Pool pool = new Pool();
+        private Retry retry = new Retry();
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private Hedge hedge = new Hedge();
+    }
+
+    @Data
+    public static class Pool {
+        private int maxConnections = 100;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Retry {
+        private long maxAttempts = 3;
+        private Duration minBackoff = Duration.ofMillis(200);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+        private double jitter = 0.5;
+        // tokens deposited per request, i.e. retries allowed as a share of live traffic
+        private double budgetRatio = 0.2;
+        private double budgetMinRetriesPerSecond = 5;
+        private double budgetCapacity = 20;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 80;
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+        private int slidingWindowSize = 50;
+        private int minimumNumberOfCalls = 20;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        private int permittedNumberOfCallsInHalfOpenState = 5;
+    }
+
+    @Data
+    public static class Hedge {
+        private boolean enabled = false;
+        // roughly the observed p95 latency of the downstream
+        private Duration delay = Duration.ofMillis(200);
+        // hedges allowed as a share of live traffic
+        private double budgetRatio = 0.1;
+        private double budgetMinHedgesPerSecond = 1;
+        private double budgetCapacity = 10;
+    }
+}
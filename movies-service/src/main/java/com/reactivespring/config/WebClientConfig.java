@@ -1,13 +1,67 @@
 package com.reactivespring.config;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.Deadline;
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
+@EnableConfigurationProperties(RestClientProperties.class)
 public class WebClientConfig {
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder){
-        return builder.build();
+    public WebClient moviesInfoWebClient(WebClient.Builder builder, RestClientProperties restClientProperties){
+        return webClient(builder, "moviesInfo", restClientProperties.getMoviesInfo());
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder, RestClientProperties restClientProperties){
+        return webClient(builder, "reviews", restClientProperties.getReviews());
+    }
+
+    private WebClient webClient(WebClient.Builder builder, String name, RestClientProperties.Downstream downstream){
+        var pool = downstream.getPool();
+        // metrics(true) publishes the reactor.netty.connection.provider.* pool gauges
+        var connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(true)
+                .build();
+
+        var httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) downstream.getConnectTimeout().toMillis())
+                .protocol(downstream.isHttp2() ? HttpProtocol.H2C : HttpProtocol.HTTP11);
+
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(propagateDeadline())
+                .build();
+    }
+
+    // every attempt (retries and hedges included) sends what is left of the deadline, none is sent once it passed
+    private static ExchangeFilterFunction propagateDeadline() {
+        return (request, next) -> Mono.deferContextual(context -> Deadline.from(context)
+                .map(deadline -> deadline.isExpired()
+                        ? Mono.<ClientResponse>error(new DeadlineExceededException(
+                                "Deadline exceeded before calling " + request.url()))
+                        : next.exchange(ClientRequest.from(request)
+                                .header(Deadline.HEADER, String.valueOf(deadline.remaining().toMillis()))
+                                .build()))
+                .orElseGet(() -> next.exchange(request)));
     }
 }
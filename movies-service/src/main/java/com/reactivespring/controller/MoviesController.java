@@ -1,42 +1,66 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.client.MovieInfoRestClient;
-import com.reactivespring.client.ReviewRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.InvalidRequestException;
+import com.reactivespring.service.MoviesService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/v1/movies")
 public class MoviesController {
 
     private MovieInfoRestClient movieInfoRestClient;
-    private ReviewRestClient reviewRestClient;
+    private MoviesService moviesService;
+    private int maxIds;
 
-    public MoviesController(MovieInfoRestClient movieInfoRestClient, ReviewRestClient reviewRestClient) {
+    public MoviesController(MovieInfoRestClient movieInfoRestClient, MoviesService moviesService,
+                            @Value("${pagination.maxPageSize:500}") int maxIds) {
         this.movieInfoRestClient = movieInfoRestClient;
-        this.reviewRestClient = reviewRestClient;
+        this.moviesService = moviesService;
+        this.maxIds = maxIds;
+    }
+
+    @GetMapping
+    public Flux<Movie> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds,
+                                           @RequestParam(value = "topReviews", required = false) Integer topReviews,
+                                           @RequestParam(value = "reviewSort", required = false) String reviewSort){
+
+        // one request must not fan out into an unbounded $in on both backends
+        if (movieIds.size() > maxIds) {
+            return Flux.error(new InvalidRequestException("At most " + maxIds + " ids per request"));
+        }
+        return moviesService.retrieveMoviesByIds(movieIds, topReviews, reviewSort);
     }
 
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId){
-
-        return movieInfoRestClient.retrieveMovieInfoById(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewsListMono = reviewRestClient.retrieveReviews(movieId)
-                            .collectList();
-                    return reviewsListMono.map(reviews -> new Movie(movieInfo, reviews));
-                });
+    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId,
+                                         @RequestParam(value = "topReviews", required = false) Integer topReviews,
+                                         @RequestParam(value = "reviewSort", required = false) String reviewSort){
+
+        return moviesService.retrieveMovieById(movieId, topReviews, reviewSort);
     }
     @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<MovieInfo> retrieveMovieInfoStream(){
 
         return movieInfoRestClient.retrieveMovieInfoStream();
     }
+
+    @GetMapping(value = "/stream", params = "enriched=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> retrieveMovieStream(@RequestParam(value = "maxConcurrency", required = false) Integer maxConcurrency,
+                                           @RequestParam(value = "ordered", defaultValue = "false") boolean ordered){
+
+        return moviesService.retrieveMovieStream(maxConcurrency, ordered);
+    }
 }
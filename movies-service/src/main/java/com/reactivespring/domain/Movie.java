@@ -14,4 +14,11 @@ public class Movie {
 
     private MovieInfo movieInfo;
     private List<Review> reviewList;
+    // set when reviews could not be fetched and reviewList is incomplete
+    private boolean degraded;
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this.movieInfo = movieInfo;
+        this.reviewList = reviewList;
+    }
 }
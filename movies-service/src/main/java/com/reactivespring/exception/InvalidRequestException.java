@@ -0,0 +1,10 @@
+package com.reactivespring.exception;
+
+public class InvalidRequestException extends RuntimeException{
+    private String message;
+
+    public InvalidRequestException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
@@ -1,6 +1,10 @@
 package com.reactivespring.exceptionHandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.InvalidRequestException;
 import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsClientException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +20,31 @@ public class GlobalErrorHandler {
         return ResponseEntity.status(exception.getStatusCode()).body((exception.getMessage()));
     }
 
+    // the reviews service rejected parameters passed through from the caller, e.g. an unknown reviewSort
+    @ExceptionHandler(ReviewsClientException.class)
+    public ResponseEntity<String> handleReviewsClientException(ReviewsClientException exception){
+        log.error("Exception Caught in handleReviewsClientException : {}", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<String> handleInvalidRequestException(InvalidRequestException exception){
+        log.error("Exception Caught in handleInvalidRequestException : {}", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<String> handleCallNotPermittedException(CallNotPermittedException exception){
+        log.error("Exception Caught in handleCallNotPermittedException : {}", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<String> handleDeadlineExceededException(DeadlineExceededException exception){
+        log.error("Exception Caught in handleDeadlineExceededException : {}", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(exception.getMessage());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException ex){
         log.error("Exception caught in handleRuntimeException :  {} " ,ex.getMessage(),  ex);
@@ -0,0 +1,164 @@
+package com.reactivespring.service;
+
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.client.MovieInfoRestClient;
+import com.reactivespring.client.ReviewRestClient;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.RequestCoalescer;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class MoviesService {
+
+    private MovieInfoCache movieInfoCache;
+    private MovieInfoRestClient movieInfoRestClient;
+    private ReviewRestClient reviewRestClient;
+    private RequestCoalescer<String, Movie> movieCoalescer;
+    private boolean parallelAggregation;
+    private int streamConcurrency;
+    private int streamMaxConcurrency;
+    private int streamLimitRate;
+    private Duration streamReviewTimeout;
+    private int topReviews;
+    private int maxTopReviews;
+    private String topReviewsSort;
+
+    public MoviesService(MovieInfoCache movieInfoCache, MovieInfoRestClient movieInfoRestClient,
+                         ReviewRestClient reviewRestClient, RequestCoalescer<String, Movie> movieCoalescer,
+                         @Value("${restClient.aggregation.parallel:true}") boolean parallelAggregation,
+                         @Value("${restClient.stream.concurrency:8}") int streamConcurrency,
+                         @Value("${restClient.stream.maxConcurrency:64}") int streamMaxConcurrency,
+                         @Value("${restClient.stream.limitRate:32}") int streamLimitRate,
+                         @Value("${restClient.stream.reviewTimeout:2s}") Duration streamReviewTimeout,
+                         @Value("${restClient.topReviews.limit:20}") int topReviews,
+                         @Value("${restClient.topReviews.maxLimit:100}") int maxTopReviews,
+                         @Value("${restClient.topReviews.sort:newest}") String topReviewsSort) {
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoRestClient = movieInfoRestClient;
+        this.reviewRestClient = reviewRestClient;
+        this.movieCoalescer = movieCoalescer;
+        this.parallelAggregation = parallelAggregation;
+        this.streamConcurrency = streamConcurrency;
+        this.streamMaxConcurrency = streamMaxConcurrency;
+        this.streamLimitRate = streamLimitRate;
+        this.streamReviewTimeout = streamReviewTimeout;
+        this.topReviews = topReviews;
+        this.maxTopReviews = maxTopReviews;
+        this.topReviewsSort = topReviewsSort;
+    }
+
+    // a Movie carries at most its top reviews in reviewSort order, never all of them
+    public Mono<Movie> retrieveMovieById(String movieId, Integer topReviews, String reviewSort) {
+        var limit = topReviewsLimit(topReviews);
+        var sort = reviewSort == null ? topReviewsSort : reviewSort;
+        // only requests asking for the same reviews share a response
+        return movieCoalescer.execute(movieId + ":" + limit + ":" + sort, () -> parallelAggregation
+                ? retrieveMovieConcurrently(movieId, limit, sort)
+                : retrieveMovieSequentially(movieId, limit, sort));
+    }
+
+    public Flux<Movie> retrieveMoviesByIds(List<String> movieIds, Integer topReviews, String reviewSort) {
+        var limit = topReviewsLimit(topReviews);
+        var sort = reviewSort == null ? topReviewsSort : reviewSort;
+        var distinctIds = movieIds.stream()
+                .distinct()
+                .collect(Collectors.toList());
+        if (distinctIds.isEmpty()) {
+            return Flux.empty();
+        }
+
+        var movieInfosMono = movieInfoRestClient.retrieveMovieInfoByIds(distinctIds)
+                .collectMap(MovieInfo::getMovieInfoId, Function.identity());
+        // one call for the reviews of the whole batch, at most limit per movie
+        var reviewsByMovieMono = reviewRestClient.retrieveReviewsByMovie(distinctIds, limit, sort)
+                .map(Optional::of)
+                .onErrorResume(CallNotPermittedException.class, ex -> {
+                    log.warn("Returning degraded movies for ids {} : {}", distinctIds, ex.getMessage());
+                    return Mono.just(Optional.<Map<String, List<Review>>>empty());
+                });
+
+        return Mono.zip(movieInfosMono, reviewsByMovieMono)
+                .flatMapMany(tuple -> {
+                    Map<String, MovieInfo> movieInfos = tuple.getT1();
+                    var reviewsByMovie = tuple.getT2();
+                    return Flux.fromStream(distinctIds.stream()
+                            .map(movieInfos::get)
+                            .filter(Objects::nonNull)
+                            .map(movieInfo -> toMovie(movieInfo, reviewsByMovie.map(reviews -> reviews
+                                    .getOrDefault(movieInfo.getMovieInfoId(), List.of())))));
+                });
+    }
+
+    public Flux<Movie> retrieveMovieStream(Integer maxConcurrency, boolean ordered) {
+        var concurrency = maxConcurrency == null
+                ? streamConcurrency
+                : Math.max(1, Math.min(maxConcurrency, streamMaxConcurrency));
+
+        // a slow or failing review lookup degrades its own element instead of stalling or ending the stream
+        Function<MovieInfo, Mono<Movie>> toMovieWithReviews = movieInfo -> retrieveReviewList(movieInfo.getMovieInfoId(),
+                        topReviewsLimit(null), topReviewsSort)
+                .timeout(streamReviewTimeout)
+                .onErrorResume(ex -> {
+                    log.warn("Returning degraded movie for id {} : {}", movieInfo.getMovieInfoId(), ex.toString());
+                    return Mono.just(Optional.<List<Review>>empty());
+                })
+                .map(reviews -> toMovie(movieInfo, reviews));
+
+        var movieInfoFlux = movieInfoRestClient.retrieveMovieInfoStream()
+                .limitRate(streamLimitRate);
+        return ordered
+                ? movieInfoFlux.flatMapSequential(toMovieWithReviews, concurrency)
+                : movieInfoFlux.flatMap(toMovieWithReviews, concurrency);
+    }
+
+    private Mono<Movie> retrieveMovieSequentially(String movieId, int limit, String sort) {
+        return movieInfoCache.retrieveMovieInfoById(movieId)
+                .flatMap(movieInfo -> retrieveReviewList(movieId, limit, sort)
+                        .map(reviews -> toMovie(movieInfo, reviews)));
+    }
+
+    private Mono<Movie> retrieveMovieConcurrently(String movieId, int limit, String sort) {
+        // zip cancels the pending review call as soon as the MovieInfo lookup fails, e.g. with a 404
+        return Mono.zip(movieInfoCache.retrieveMovieInfoById(movieId),
+                retrieveReviewList(movieId, limit, sort),
+                this::toMovie);
+    }
+
+    // an empty Optional means the reviews circuit breaker is open and the Movie is served degraded
+    private Mono<Optional<List<Review>>> retrieveReviewList(String movieId, int limit, String sort) {
+        return reviewRestClient.retrieveReviews(movieId, limit, sort)
+                .collectList()
+                .map(Optional::of)
+                .onErrorResume(CallNotPermittedException.class, ex -> {
+                    log.warn("Returning degraded movie for id {} : {}", movieId, ex.getMessage());
+                    return Mono.just(Optional.<List<Review>>empty());
+                });
+    }
+
+    private int topReviewsLimit(Integer topReviews) {
+        return topReviews == null
+                ? Math.min(this.topReviews, maxTopReviews)
+                : Math.max(1, Math.min(topReviews, maxTopReviews));
+    }
+
+    private Movie toMovie(MovieInfo movieInfo, Optional<? extends List<Review>> reviews) {
+        return reviews.<Movie>map(reviewList -> new Movie(movieInfo, reviewList))
+                .orElseGet(() -> new Movie(movieInfo, List.of(), true));
+    }
+}
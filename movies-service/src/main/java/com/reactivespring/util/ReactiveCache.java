@@ -0,0 +1,141 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded, TTL based cache for values loaded asynchronously.
+ * Only successfully loaded values are cached, errors and empty results always go back to the loader.
+ */
+public class ReactiveCache<K, V> {
+
+    public enum EvictionPolicy {
+        LRU, FIFO
+    }
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private long generation;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictionCounter;
+    private final Counter expiredEvictionCounter;
+    private final Counter invalidatedCounter;
+
+    public ReactiveCache(String name, int maximumSize, Duration ttl, EvictionPolicy evictionPolicy,
+                         MeterRegistry meterRegistry) {
+        this(name, maximumSize, ttl, evictionPolicy, meterRegistry, System::nanoTime);
+    }
+
+    ReactiveCache(String name, int maximumSize, Duration ttl, EvictionPolicy evictionPolicy,
+                  MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, evictionPolicy == EvictionPolicy.LRU);
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+        this.hitCounter = getCounter(name, "hit", meterRegistry);
+        this.missCounter = getCounter(name, "miss", meterRegistry);
+        this.sizeEvictionCounter = evictionCounter(name, "size", meterRegistry);
+        this.expiredEvictionCounter = evictionCounter(name, "expired", meterRegistry);
+        this.invalidatedCounter = evictionCounter(name, "invalidated", meterRegistry);
+        Gauge.builder("movies.cache.size", this, ReactiveCache::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        return Mono.defer(() -> {
+            var cached = getIfPresent(key);
+            if (cached != null) {
+                hitCounter.increment();
+                return Mono.just(cached);
+            }
+            missCounter.increment();
+            var loadGeneration = currentGeneration();
+            return loader.apply(key)
+                    .doOnNext(value -> put(key, value, loadGeneration));
+        });
+    }
+
+    public synchronized V getIfPresent(K key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (nanoTime.getAsLong() - entry.writtenAt >= ttlNanos) {
+            entries.remove(key);
+            expiredEvictionCounter.increment();
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        if (entries.remove(key) != null) {
+            invalidatedCounter.increment();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidatedCounter.increment(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void put(K key, V value, long loadGeneration) {
+        // an invalidation raced with this load, the loaded value may already be stale
+        if (loadGeneration != generation) {
+            return;
+        }
+        entries.put(key, new CacheEntry<>(value, nanoTime.getAsLong()));
+        var iterator = entries.values().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            sizeEvictionCounter.increment();
+        }
+    }
+
+    private static Counter getCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.cache.gets")
+                .tag("name", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(String name, String cause, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.cache.evictions")
+                .tag("name", name)
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long writtenAt;
+
+        private CacheEntry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
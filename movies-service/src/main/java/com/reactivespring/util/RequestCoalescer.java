@@ -0,0 +1,134 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight upstream call between all concurrent subscribers asking for the same key.
+ * The shared call is reference counted: one subscriber going away does not abort it for the others,
+ * it is only cancelled once every subscriber has gone away. The shared call runs under a copy of the latest
+ * {@link Deadline} among its callers, extended as callers join, so a caller with a short deadline does not cut
+ * the call short for the others. Each caller still waits for it at most until its own deadline.
+ */
+@Slf4j
+public class RequestCoalescer<K, V> {
+
+    // the shared call fails on the same deadline by itself, its own error is given this long to arrive first
+    private static final Duration SETTLE = Duration.ofMillis(50);
+
+    private final Map<K, Shared<V>> inFlight = new ConcurrentHashMap<>();
+    private final String name;
+    private final int maxKeys;
+    private final Counter deadlineExceededCounter;
+    private final Counter issuedCounter;
+    private final Counter coalescedCounter;
+    private final Counter bypassedCounter;
+
+    public RequestCoalescer(String name, int maxKeys, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxKeys = maxKeys;
+        this.deadlineExceededCounter = Deadline.exceededCounter(name, meterRegistry);
+        this.issuedCounter = callCounter(name, "issued", meterRegistry);
+        this.coalescedCounter = callCounter(name, "coalesced", meterRegistry);
+        this.bypassedCounter = callCounter(name, "bypassed", meterRegistry);
+        Gauge.builder("movies.coalescer.inflight", inFlight, Map::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.deferContextual(context -> {
+            var deadline = Deadline.from(context);
+            var existing = inFlight.get(key);
+            if (existing != null) {
+                return joinOrBypass(existing, deadline, call);
+            }
+            if (inFlight.size() >= maxKeys) {
+                log.debug("In-flight key limit {} reached, not coalescing key : {}", maxKeys, key);
+                bypassedCounter.increment();
+                return await(call.get(), deadline.orElse(null), deadline);
+            }
+
+            var shared = new Shared<V>(deadline.map(Deadline::copy).orElse(null));
+            var response = Mono.defer(call);
+            if (shared.deadline != null) {
+                response = response.contextWrite(shared.deadline::addTo);
+            }
+            shared.response = response
+                    .doFinally(signalType -> inFlight.remove(key, shared))
+                    .share();
+
+            var previous = inFlight.putIfAbsent(key, shared);
+            if (previous != null) {
+                return joinOrBypass(previous, deadline, call);
+            }
+            issuedCounter.increment();
+            return await(shared.response, shared.deadline, deadline);
+        });
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private Mono<V> joinOrBypass(Shared<V> shared, Optional<Deadline> deadline, Supplier<Mono<V>> call) {
+        if (shared.join(deadline)) {
+            coalescedCounter.increment();
+            return await(shared.response, shared.deadline, deadline);
+        }
+        // the shared call is past its deadline and failing, this caller gets a call of its own
+        bypassedCounter.increment();
+        return await(call.get(), deadline.orElse(null), deadline);
+    }
+
+    // callDeadline is the one the call runs under, a caller holding it fails with the call, any other at its own
+    private Mono<V> await(Mono<V> response, Deadline callDeadline, Optional<Deadline> deadline) {
+        if (deadline.isEmpty()) {
+            return response;
+        }
+        var own = deadline.get();
+        if (own.isExpired()) {
+            deadlineExceededCounter.increment();
+            return Mono.error(Deadline.exceeded(name));
+        }
+        var expiry = own.expiry()
+                .flatMap(tick -> callDeadline == null || callDeadline.isLaterThan(own)
+                        ? Mono.just(tick)
+                        : Mono.delay(SETTLE));
+        return response.timeout(expiry, Mono.defer(() -> {
+            deadlineExceededCounter.increment();
+            return Mono.error(Deadline.exceeded(name));
+        }));
+    }
+
+    private static Counter callCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.coalescer.calls")
+                .tag("name", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static class Shared<V> {
+        // null when the caller that issued it had none, the call then runs without a deadline
+        private final Deadline deadline;
+        private Mono<V> response;
+
+        private Shared(Deadline deadline) {
+            this.deadline = deadline;
+        }
+
+        // a caller without a deadline joins whatever the call runs under
+        private boolean join(Optional<Deadline> callerDeadline) {
+            return deadline == null || callerDeadline.isEmpty() || deadline.extendTo(callerDeadline.get());
+        }
+    }
+}
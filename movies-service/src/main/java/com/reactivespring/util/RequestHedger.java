@@ -0,0 +1,67 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second copy of a request when the first has not answered within the hedge delay and
+ * takes whichever answers first. Hedges are capped to a share of the traffic by a {@link RetryBudget}.
+ */
+public class RequestHedger {
+
+    private final boolean enabled;
+    private final Duration delay;
+    private final RetryBudget hedgeBudget;
+    private final Counter issuedCounter;
+    private final Counter wonCounter;
+
+    public RequestHedger(String downstream, RestClientProperties.Hedge hedgeProperties, MeterRegistry meterRegistry) {
+        this.enabled = hedgeProperties.isEnabled();
+        this.delay = hedgeProperties.getDelay();
+        this.hedgeBudget = new RetryBudget(hedgeProperties.getBudgetRatio(),
+                hedgeProperties.getBudgetMinHedgesPerSecond(), hedgeProperties.getBudgetCapacity());
+        this.issuedCounter = hedgeCounter(downstream, "issued", meterRegistry);
+        this.wonCounter = hedgeCounter(downstream, "won", meterRegistry);
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            hedgeBudget.deposit();
+            Mono<T> hedgedCall = Mono.delay(delay)
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryWithdraw()) {
+                            return Mono.never();
+                        }
+                        issuedCounter.increment();
+                        // the hedge only ever contributes a value, a failing hedge leaves the outcome to the primary
+                        return call.get()
+                                .doOnNext(value -> wonCounter.increment())
+                                .onErrorResume(ex -> Mono.never())
+                                .switchIfEmpty(Mono.never());
+                    });
+            return Mono.firstWithSignal(Mono.defer(call), hedgedCall);
+        });
+    }
+
+    public <T> Flux<T> hedgeMany(Supplier<Flux<T>> call) {
+        return hedge(() -> call.get().collectList())
+                .flatMapIterable(Function.identity());
+    }
+
+    private static Counter hedgeCounter(String downstream, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.client.hedges")
+                .tag("downstream", downstream)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
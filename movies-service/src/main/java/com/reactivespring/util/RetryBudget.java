@@ -0,0 +1,56 @@
+package com.reactivespring.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket capping retries to a share of live traffic: every request deposits {@code ratio} tokens,
+ * every retry withdraws one. A small per-second refill keeps low-traffic callers able to retry at all.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double minRetriesPerSecond;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+    private double tokens;
+    private long lastRefill;
+
+    public RetryBudget(double ratio, double minRetriesPerSecond, double capacity) {
+        this(ratio, minRetriesPerSecond, capacity, System::nanoTime);
+    }
+
+    RetryBudget(double ratio, double minRetriesPerSecond, double capacity, LongSupplier nanoTime) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capacity = capacity;
+        this.nanoTime = nanoTime;
+        this.tokens = capacity;
+        this.lastRefill = nanoTime.getAsLong();
+    }
+
+    public synchronized void deposit() {
+        refill();
+        tokens = Math.min(capacity, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double availableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        var now = nanoTime.getAsLong();
+        var elapsedSeconds = (now - lastRefill) / 1_000_000_000d;
+        lastRefill = now;
+        tokens = Math.min(capacity, tokens + elapsedSeconds * minRetriesPerSecond);
+    }
+}
@@ -1,20 +1,70 @@
 package com.reactivespring.util;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.reactivespring.config.RestClientProperties;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.codec.CodecException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
 
 public class RetryUtil {
 
-    public static Retry retrySpec(){
-         return Retry.fixedDelay(3, Duration.ofSeconds(1))
-                .filter(ex -> ex instanceof MoviesInfoServerException ||
-                        ex instanceof ReviewsServerException)
+    public static Retry retrySpec(String downstream, RestClientProperties.Retry retryProperties,
+                                  RetryBudget retryBudget, MeterRegistry meterRegistry){
+        var attemptedCounter = retryCounter(downstream, "attempted", meterRegistry);
+        var deniedCounter = retryCounter(downstream, "denied", meterRegistry);
+
+        return Retry.backoff(retryProperties.getMaxAttempts(), retryProperties.getMinBackoff())
+                .maxBackoff(retryProperties.getMaxBackoff())
+                .jitter(retryProperties.getJitter())
+                .filter(RetryUtil::isRetryable)
+                .doBeforeRetryAsync(retrySignal -> {
+                    // the budget is only consulted once a retry is actually about to happen
+                    if (!retryBudget.tryWithdraw()) {
+                        deniedCounter.increment();
+                        return Mono.error(retrySignal.failure());
+                    }
+                    attemptedCounter.increment();
+                    return Mono.empty();
+                })
                 .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) ->
 
                         Exceptions.propagate(retrySignal.failure()));
     }
+
+    public static boolean isRetryable(Throwable ex) {
+        // a payload that cannot be read is read the same way on every attempt
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CodecException || cause instanceof JsonProcessingException) {
+                return false;
+            }
+        }
+        if (ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException
+                || ex instanceof WebClientRequestException) {
+            return true;
+        }
+        // timeouts and connection resets, possibly wrapped by the client
+        for (var cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof IOException
+                    || cause instanceof io.netty.handler.timeout.TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Counter retryCounter(String downstream, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.client.retries")
+                .tag("downstream", downstream)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
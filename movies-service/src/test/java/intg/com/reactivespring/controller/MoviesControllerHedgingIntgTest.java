@@ -0,0 +1,132 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.reactivespring.domain.Movie;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.cache.enabled=false",
+        "restClient.moviesInfo.hedge.enabled=true",
+        "restClient.moviesInfo.hedge.delay=200ms",
+        "restClient.moviesInfo.hedge.budgetRatio=1.0",
+        "restClient.reviews.hedge.enabled=true",
+        "restClient.reviews.hedge.delay=200ms",
+        "restClient.reviews.hedge.budgetRatio=1.0",
+})
+public class MoviesControllerHedgingIntgTest {
+
+        @Autowired
+        WebTestClient webTestClient;
+
+        @Autowired
+        MeterRegistry meterRegistry;
+
+        @Test
+        void retrieveMovieById_slowMovieInfoReplicaIsHedged(){
+                var movieId = "abc";
+                // the first request lands on a replica stuck in a GC pause, the hedge on a healthy one
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .inScenario("gc-pause")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("recovered")
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")
+                                .withFixedDelay(3000)));
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .inScenario("gc-pause")
+                        .whenScenarioStateIs("recovered")
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                var start = System.nanoTime();
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody(Movie.class)
+                        .consumeWith(movieEntityExchangeResult -> {
+                                var movie = movieEntityExchangeResult.getResponseBody();
+                                assert movie != null;
+                                assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                        });
+                var elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+                assertTrue(elapsedMillis < 3000, "took " + elapsedMillis + "ms");
+                WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+        }
+
+        @Test
+        void retrieveMovieById_randomDelays(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")
+                                .withUniformRandomDelay(0, 600)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")
+                                .withUniformRandomDelay(0, 600)));
+
+                var issuedBefore = hedgeCount("issued");
+                for (int i = 0; i < 20; i++) {
+                        webTestClient
+                                .get()
+                                .uri("/v1/movies/{id}", movieId)
+                                .exchange()
+                                .expectStatus()
+                                .isOk()
+                                .expectBody(Movie.class)
+                                .consumeWith(movieEntityExchangeResult -> {
+                                        var movie = movieEntityExchangeResult.getResponseBody();
+                                        assert movie != null;
+                                        assertEquals(2, movie.getReviewList().size());
+                                });
+                }
+
+                // with a 200ms hedge delay two thirds of the calls are expected to be hedged
+                assertTrue(hedgeCount("issued") > issuedBefore);
+                assertTrue(hedgeCount("won") <= hedgeCount("issued"));
+        }
+
+        private double hedgeCount(String outcome) {
+                return meterRegistry.get("movies.client.hedges")
+                        .tag("outcome", outcome)
+                        .counters()
+                        .stream()
+                        .mapToDouble(counter -> counter.count())
+                        .sum();
+        }
+}
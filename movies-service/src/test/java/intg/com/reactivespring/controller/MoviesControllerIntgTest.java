@@ -4,6 +4,11 @@ import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.client.ReviewRestClient;
 
 import com.reactivespring.domain.Movie;
+import com.reactivespring.config.ResilienceConfig;
+import com.reactivespring.util.Deadline;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -13,11 +18,17 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.TestPropertySources;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -27,11 +38,25 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(properties = {
         "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
         "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+        "restClient.cache.enabled=false",
+        "restClient.aggregation.parallel=true",
+        "restClient.stream.reviewTimeout=500ms",
 })
 public class MoviesControllerIntgTest {
         @Autowired
         WebTestClient webTestClient;
 
+        @Autowired
+        CircuitBreakerRegistry circuitBreakerRegistry;
+
+        @Autowired
+        MeterRegistry meterRegistry;
+
+        @AfterEach
+        void tearDown() {
+                circuitBreakerRegistry.circuitBreaker(ResilienceConfig.MOVIES_INFO).reset();
+                circuitBreakerRegistry.circuitBreaker(ResilienceConfig.REVIEWS).reset();
+        }
 
         @Test
         void retrieveMovieById(){
@@ -141,4 +166,382 @@ public class MoviesControllerIntgTest {
 
         }
 
+        @Test
+        void retrieveMovieById_reviewsCircuitOpen(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                circuitBreakerRegistry.circuitBreaker(ResilienceConfig.REVIEWS).transitionToOpenState();
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody(Movie.class)
+                        .consumeWith(movieEntityExchangeResult -> {
+                                var movie = movieEntityExchangeResult.getResponseBody();
+                                assert movie != null;
+                                assertTrue(movie.isDegraded());
+                                assertTrue(movie.getReviewList().isEmpty());
+                                assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                        });
+
+                WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+        }
+
+        @Test
+        void retrieveMovieById_moviesInfoCircuitOpen(){
+                var movieId = "abc";
+                circuitBreakerRegistry.circuitBreaker(ResilienceConfig.MOVIES_INFO).transitionToOpenState();
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isEqualTo(503);
+
+                WireMock.verify(0, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+        }
+
+        @Test
+        void retrieveMoviesByIds(){
+                stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                        .withQueryParam("ids", equalTo("1,2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfos.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews/byMovie"))
+                        .withQueryParam("movieInfoIds", equalTo("1,2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviewsbymovie.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies?ids={ids}", "1,2")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBodyList(Movie.class)
+                        .hasSize(2)
+                        .consumeWith(listEntityExchangeResult -> {
+                                var movies = listEntityExchangeResult.getResponseBody();
+                                assert movies != null;
+                                assertEquals("Batman Begins", movies.get(0).getMovieInfo().getName());
+                                assertEquals(2, movies.get(0).getReviewList().size());
+                                assertEquals("The Dark Knight", movies.get(1).getMovieInfo().getName());
+                                assertEquals(0, movies.get(1).getReviewList().size());
+                        });
+
+                WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos")));
+                WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews/byMovie")));
+        }
+
+        @Test
+        void retrieveMoviesByIds_topReviewsPerMovie(){
+                stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                        .withQueryParam("ids", equalTo("1,2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfos.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews/byMovie"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviewsbymovie.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies?ids={ids}&topReviews=2", "1,2")
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+
+                // every movie gets its own top reviews, a movie with many reviews cannot crowd out the others
+                WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews/byMovie"))
+                        .withQueryParam("movieInfoIds", equalTo("1,2"))
+                        .withQueryParam("perMovie", equalTo("2")));
+                WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+        }
+
+        @Test
+        void retrieveMoviesByIds_tooManyIds(){
+                var ids = IntStream.rangeClosed(1, 501)
+                        .mapToObj(String::valueOf)
+                        .collect(Collectors.joining(","));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies?ids={ids}", ids)
+                        .exchange()
+                        .expectStatus()
+                        .isBadRequest()
+                        .expectBody(String.class)
+                        .isEqualTo("At most 500 ids per request");
+
+                WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/movieinfos")));
+        }
+
+        @Test
+        void retrieveMovieById_topReviews(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}?topReviews=1&reviewSort=rating", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}?topReviews=100000", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+
+                // only one page of reviews is ever asked for, capped at restClient.topReviews.maxLimit
+                WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                        .withQueryParam("limit", equalTo("1"))
+                        .withQueryParam("sort", equalTo("rating")));
+                WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                        .withQueryParam("limit", equalTo("100"))
+                        .withQueryParam("sort", equalTo("newest")));
+        }
+
+        @Test
+        void retrieveMoviesByIds_topReviews(){
+                stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                        .withQueryParam("ids", equalTo("1,2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfos.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews/byMovie"))
+                        .withQueryParam("movieInfoIds", equalTo("1,2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviewsbymovie.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies?ids={ids}&topReviews=1", "1,2")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBodyList(Movie.class)
+                        .hasSize(2);
+
+                WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews/byMovie"))
+                        .withQueryParam("perMovie", equalTo("1"))
+                        .withQueryParam("sort", equalTo("newest")));
+        }
+
+        @Test
+        void retrieveMovieById_invalidReviewSort(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withStatus(400)
+                                .withBody("Unknown sort : oldest, sort can be newest or rating")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}?reviewSort=oldest", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isBadRequest();
+        }
+
+        @Test
+        void retrieveMovieStream_enriched(){
+                var movieInfos = "{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,"
+                        + "\"cast\":[\"Christian Bale\",\"Michael Cane\"],\"release_date\":\"2005-06-15\"}\n"
+                        + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008,"
+                        + "\"cast\":[\"Christian Bale\",\"HeathLedger\"],\"release_date\":\"2008-07-18\"}\n";
+                stubFor(get(urlEqualTo("/v1/movieinfos/stream"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/x-ndjson")
+                                .withBody(movieInfos)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .withQueryParam("movieInfoId", equalTo("1"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                // slower than restClient.stream.reviewTimeout, only this element is degraded
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .withQueryParam("movieInfoId", equalTo("2"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBody("[]")
+                                .withFixedDelay(2000)));
+
+                var movieStreamFlux = webTestClient
+                        .get()
+                        .uri("/v1/movies/stream?enriched=true&ordered=true&maxConcurrency=2")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .returnResult(Movie.class)
+                        .getResponseBody();
+
+                StepVerifier.create(movieStreamFlux)
+                        .assertNext(movie -> {
+                                assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                                assertEquals(2, movie.getReviewList().size());
+                                assertFalse(movie.isDegraded());
+                        })
+                        .assertNext(movie -> {
+                                assertEquals("The Dark Knight", movie.getMovieInfo().getName());
+                                assertTrue(movie.isDegraded());
+                        })
+                        .verifyComplete();
+        }
+
+        @Test
+        void retrieveMovieById_propagatesDeadline(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .header(Deadline.HEADER, "3000")
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+
+                // what is left of the caller's 3000ms, never the 5s route budget
+                WireMock.verify(getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .withHeader(Deadline.HEADER, matching("[12]?\\d{1,3}")));
+                WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                        .withHeader(Deadline.HEADER, matching("[12]?\\d{1,3}")));
+        }
+
+        @Test
+        void retrieveMovieById_deadlineExceeded(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")
+                                .withFixedDelay(2000)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                var exceededBefore = meterRegistry.counter("deadline.exceeded", "stage", "moviesInfo").count();
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .header(Deadline.HEADER, "300")
+                        .exchange()
+                        .expectStatus()
+                        .isEqualTo(504);
+
+                assertEquals(exceededBefore + 1,
+                        meterRegistry.counter("deadline.exceeded", "stage", "moviesInfo").count());
+                // cancelled, not retried
+                WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+        }
+
+        @Test
+        void retrieveMovieById_parallelAggregationLatency(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")
+                                .withFixedDelay(500)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")
+                                .withFixedDelay(500)));
+
+                // warm up the connection pool so the measured call does not pay for connection setup
+                retrieveMovieByIdMillis(movieId);
+
+                // both calls take 500ms, sequentially it is at least 1000ms, see MoviesControllerSequentialIntgTest
+                var parallelMillis = retrieveMovieByIdMillis(movieId);
+                assertTrue(parallelMillis < 1000, "parallel took " + parallelMillis + "ms");
+        }
+
+        @Test
+        void retrieveMovieById_parallelAggregation_moviesServer_404(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withStatus(404)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")
+                                .withFixedDelay(2000)));
+
+                webTestClient
+                        .mutate()
+                        .responseTimeout(Duration.ofMillis(1500))
+                        .build()
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .is4xxClientError()
+                        .expectBody(String.class)
+                        .isEqualTo("There is no MovieInfo Available for the passed in Id : abc");
+        }
+
+        private long retrieveMovieByIdMillis(String movieId){
+                var start = System.nanoTime();
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+                return Duration.ofNanos(System.nanoTime() - start).toMillis();
+        }
+
 }
@@ -0,0 +1,89 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.Movie;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.cache.enabled=false",
+        "restClient.aggregation.parallel=false",
+})
+public class MoviesControllerSequentialIntgTest {
+
+        @Autowired
+        WebTestClient webTestClient;
+
+        @Test
+        void retrieveMovieById_sequentialAggregation(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")));
+
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody(Movie.class)
+                        .consumeWith(movieEntityExchangeResult -> {
+                                var movie = movieEntityExchangeResult.getResponseBody();
+                                assert movie != null;
+                                assertEquals(2, movie.getReviewList().size());
+                                assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                        });
+        }
+
+        @Test
+        void retrieveMovieById_sequentialAggregationLatency(){
+                var movieId = "abc";
+                stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("movieinfo.json")
+                                .withFixedDelay(500)));
+
+                stubFor(get(urlPathEqualTo("/v1/reviews"))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBodyFile("reviews.json")
+                                .withFixedDelay(500)));
+
+                var start = System.nanoTime();
+                webTestClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchange()
+                        .expectStatus()
+                        .isOk();
+                var sequentialMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+                // the reviews are only requested once the MovieInfo is there
+                assertTrue(sequentialMillis >= 1000, "sequential took " + sequentialMillis + "ms");
+        }
+}
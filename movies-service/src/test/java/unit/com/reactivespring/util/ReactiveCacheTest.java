@@ -0,0 +1,111 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReactiveCacheTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicLong now;
+    AtomicInteger loads;
+    Function<String, Mono<String>> loader;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong();
+        loads = new AtomicInteger();
+        loader = key -> {
+            loads.incrementAndGet();
+            return Mono.just("movie-" + key);
+        };
+    }
+
+    @Test
+    void cachesLoadedValue() {
+        var cache = newCache(10, ReactiveCache.EvictionPolicy.LRU);
+
+        StepVerifier.create(cache.get("abc", loader)).expectNext("movie-abc").verifyComplete();
+        StepVerifier.create(cache.get("abc", loader)).expectNext("movie-abc").verifyComplete();
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("movies.cache.gets").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("movies.cache.gets").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        var cache = newCache(10, ReactiveCache.EvictionPolicy.LRU);
+        cache.get("abc", loader).block();
+
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+
+        assertNull(cache.getIfPresent("abc"));
+        assertEquals(1.0, meterRegistry.get("movies.cache.evictions").tag("cause", "expired").counter().count());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        var cache = newCache(2, ReactiveCache.EvictionPolicy.LRU);
+        cache.get("a", loader).block();
+        cache.get("b", loader).block();
+        cache.get("a", loader).block();
+
+        cache.get("c", loader).block();
+
+        assertEquals("movie-a", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(1.0, meterRegistry.get("movies.cache.evictions").tag("cause", "size").counter().count());
+    }
+
+    @Test
+    void evictsFirstInserted() {
+        var cache = newCache(2, ReactiveCache.EvictionPolicy.FIFO);
+        cache.get("a", loader).block();
+        cache.get("b", loader).block();
+        cache.get("a", loader).block();
+
+        cache.get("c", loader).block();
+
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("movie-b", cache.getIfPresent("b"));
+    }
+
+    @Test
+    void invalidateRemovesEntry() {
+        var cache = newCache(10, ReactiveCache.EvictionPolicy.LRU);
+        cache.get("abc", loader).block();
+
+        cache.invalidate("abc");
+        cache.get("abc", loader).block();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        var cache = newCache(10, ReactiveCache.EvictionPolicy.LRU);
+
+        StepVerifier.create(cache.get("abc", key -> Mono.error(new RuntimeException("MovieInfo Service Unavailable"))))
+                .expectErrorMessage("MovieInfo Service Unavailable")
+                .verify();
+
+        assertEquals(0, cache.size());
+    }
+
+    private ReactiveCache<String, String> newCache(int maximumSize, ReactiveCache.EvictionPolicy evictionPolicy) {
+        return new ReactiveCache<>("test", maximumSize, Duration.ofSeconds(30), evictionPolicy,
+                meterRegistry, now::get);
+    }
+}
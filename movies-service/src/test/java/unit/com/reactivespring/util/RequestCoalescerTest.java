@@ -0,0 +1,188 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicInteger upstreamCalls;
+    Sinks.One<String> upstream;
+    Supplier<Mono<String>> call;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        upstreamCalls = new AtomicInteger();
+        upstream = Sinks.one();
+        call = () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asMono();
+        };
+    }
+
+    @Test
+    void concurrentCallsShareOneUpstream() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+
+        var first = coalescer.execute("abc", call);
+        var second = coalescer.execute("abc", call);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitValue("Batman Begins"))
+                .assertNext(movies -> {
+                    assertEquals("Batman Begins", movies.getT1());
+                    assertEquals("Batman Begins", movies.getT2());
+                })
+                .verifyComplete();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, coalescer.inFlightCount());
+        assertEquals(1.0, callCount("issued"));
+        assertEquals(1.0, callCount("coalesced"));
+    }
+
+    @Test
+    void cancelledSubscriberDoesNotCancelSharedCall() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+
+        var cancelled = coalescer.execute("abc", call).subscribe();
+        var waiting = coalescer.execute("abc", call);
+
+        StepVerifier.create(waiting)
+                .then(cancelled::dispose)
+                .then(() -> upstream.tryEmitValue("Batman Begins"))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void shortDeadlineDoesNotCutTheCallShortForLaterCallers() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+
+        var shortCaller = executeWithin(coalescer, Duration.ofMillis(50));
+        var longCaller = executeWithin(coalescer, Duration.ofSeconds(5));
+
+        assertDeadlineExceeded(shortCaller);
+        assertFalse(longCaller.isDone());
+        upstream.tryEmitValue("Batman Begins");
+
+        assertEquals("Batman Begins", longCaller.join());
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void longDeadlineDoesNotHoldEarlierCallersPastTheirs() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+
+        var longCaller = executeWithin(coalescer, Duration.ofSeconds(5));
+        var shortCaller = executeWithin(coalescer, Duration.ofMillis(50));
+
+        assertDeadlineExceeded(shortCaller);
+        assertFalse(longCaller.isDone());
+        upstream.tryEmitValue("Batman Begins");
+
+        assertEquals("Batman Begins", longCaller.join());
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1.0, meterRegistry.get("deadline.exceeded").tag("stage", "test").counter().count());
+    }
+
+    @Test
+    void sharedCallRunsUnderTheLatestDeadline() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+        var callDeadline = new AtomicReference<Deadline>();
+        call = () -> Mono.deferContextual(context -> {
+            callDeadline.set(Deadline.from(context).orElseThrow());
+            return upstream.asMono();
+        });
+
+        var shortCaller = executeWithin(coalescer, Duration.ofMillis(500));
+        assertTrue(callDeadline.get().remaining().compareTo(Duration.ofMillis(500)) <= 0);
+        var longCaller = executeWithin(coalescer, Duration.ofSeconds(5));
+
+        assertTrue(callDeadline.get().remaining().compareTo(Duration.ofSeconds(1)) > 0);
+        upstream.tryEmitValue("Batman Begins");
+        assertEquals("Batman Begins", shortCaller.join());
+        assertEquals("Batman Begins", longCaller.join());
+    }
+
+    @Test
+    void callerHoldingTheCallDeadlineGetsTheCallsOwnError() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+        var upstreamExceeded = Deadline.exceededCounter("moviesInfo", meterRegistry);
+        call = () -> Deadline.enforce(upstream.asMono(), "moviesInfo", upstreamExceeded);
+
+        var caller = executeWithin(coalescer, Duration.ofMillis(100));
+
+        var exception = assertThrows(CompletionException.class, caller::join);
+        assertEquals("Deadline exceeded in moviesInfo", exception.getCause().getMessage());
+        assertEquals(1.0, upstreamExceeded.count());
+        assertEquals(0.0, meterRegistry.get("deadline.exceeded").tag("stage", "test").counter().count());
+    }
+
+    @Test
+    void completedCallReleasesKey() {
+        var coalescer = new RequestCoalescer<String, String>("test", 10, meterRegistry);
+        upstream.tryEmitValue("Batman Begins");
+
+        StepVerifier.create(coalescer.execute("abc", call))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+        StepVerifier.create(coalescer.execute("abc", call))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(2.0, callCount("issued"));
+    }
+
+    @Test
+    void keysBeyondLimitAreNotCoalesced() {
+        var coalescer = new RequestCoalescer<String, String>("test", 1, meterRegistry);
+
+        var pending = coalescer.execute("abc", call).subscribe();
+        StepVerifier.create(coalescer.execute("def", () -> Mono.just("The Dark Knight")))
+                .expectNext("The Dark Knight")
+                .verifyComplete();
+        pending.dispose();
+
+        assertEquals(1.0, callCount("bypassed"));
+    }
+
+    private CompletableFuture<String> executeWithin(RequestCoalescer<String, String> coalescer, Duration budget) {
+        return coalescer.execute("abc", call)
+                .contextWrite(Deadline.after(budget)::addTo)
+                .toFuture();
+    }
+
+    private static void assertDeadlineExceeded(CompletableFuture<String> caller) {
+        var exception = assertThrows(CompletionException.class, caller::join);
+        assertTrue(exception.getCause() instanceof DeadlineExceededException);
+    }
+
+    private double callCount(String result) {
+        return meterRegistry.get("movies.coalescer.calls")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}
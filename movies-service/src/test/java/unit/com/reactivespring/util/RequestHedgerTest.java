@@ -0,0 +1,107 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RestClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestHedgerTest {
+
+    SimpleMeterRegistry meterRegistry;
+    RestClientProperties.Hedge hedgeProperties;
+    AtomicInteger calls;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        hedgeProperties = new RestClientProperties.Hedge();
+        hedgeProperties.setEnabled(true);
+        hedgeProperties.setDelay(Duration.ofMillis(100));
+        hedgeProperties.setBudgetRatio(1);
+        calls = new AtomicInteger();
+    }
+
+    @Test
+    void slowPrimaryIsHedged() {
+        var requestHedger = new RequestHedger("test", hedgeProperties, meterRegistry);
+        Supplier<Mono<String>> call = () -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofSeconds(1)).thenReturn("primary")
+                : Mono.just("hedge");
+
+        StepVerifier.withVirtualTime(() -> requestHedger.hedge(call))
+                .thenAwait(Duration.ofMillis(100))
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, hedgeCount("issued"));
+        assertEquals(1.0, hedgeCount("won"));
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        var requestHedger = new RequestHedger("test", hedgeProperties, meterRegistry);
+        Supplier<Mono<String>> call = () -> {
+            calls.incrementAndGet();
+            return Mono.just("primary");
+        };
+
+        StepVerifier.withVirtualTime(() -> requestHedger.hedge(call))
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, hedgeCount("issued"));
+    }
+
+    @Test
+    void failedHedgeLeavesOutcomeToPrimary() {
+        var requestHedger = new RequestHedger("test", hedgeProperties, meterRegistry);
+        Supplier<Mono<String>> call = () -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofSeconds(1)).thenReturn("primary")
+                : Mono.error(new RuntimeException("MovieInfo Service Unavailable"));
+
+        StepVerifier.withVirtualTime(() -> requestHedger.hedge(call))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(1.0, hedgeCount("issued"));
+        assertEquals(0.0, hedgeCount("won"));
+    }
+
+    @Test
+    void hedgesAreCappedByBudget() {
+        hedgeProperties.setBudgetRatio(0);
+        hedgeProperties.setBudgetMinHedgesPerSecond(0);
+        hedgeProperties.setBudgetCapacity(0);
+        var requestHedger = new RequestHedger("test", hedgeProperties, meterRegistry);
+        Supplier<Mono<String>> call = () -> {
+            calls.incrementAndGet();
+            return Mono.delay(Duration.ofSeconds(1)).thenReturn("primary");
+        };
+
+        StepVerifier.withVirtualTime(() -> requestHedger.hedge(call))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext("primary")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, hedgeCount("issued"));
+    }
+
+    private double hedgeCount(String outcome) {
+        return meterRegistry.get("movies.client.hedges")
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,128 @@
+package com.reactivespring.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.reactivespring.config.RestClientProperties;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.codec.DecodingException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryUtilTest {
+
+    SimpleMeterRegistry meterRegistry;
+    RestClientProperties.Retry retryProperties;
+    AtomicInteger attempts;
+    Mono<String> failingCall;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        retryProperties = new RestClientProperties.Retry();
+        retryProperties.setMinBackoff(Duration.ofMillis(10));
+        retryProperties.setMaxBackoff(Duration.ofMillis(20));
+        attempts = new AtomicInteger();
+        failingCall = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new MoviesInfoServerException("MovieInfo Service Unavailable"));
+        });
+    }
+
+    @Test
+    void retriesServerErrorsUntilExhausted() {
+        var retryBudget = new RetryBudget(0.2, 0, 10);
+
+        StepVerifier.create(failingCall.retryWhen(RetryUtil.retrySpec("test", retryProperties, retryBudget, meterRegistry)))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        assertEquals(4, attempts.get());
+        assertEquals(3.0, retryCount("attempted"));
+    }
+
+    @Test
+    void retriesAreDeniedOnceBudgetIsSpent() {
+        var retryBudget = new RetryBudget(0.2, 0, 1);
+
+        StepVerifier.create(failingCall.retryWhen(RetryUtil.retrySpec("test", retryProperties, retryBudget, meterRegistry)))
+                .expectErrorMessage("MovieInfo Service Unavailable")
+                .verify();
+
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, retryCount("attempted"));
+        assertEquals(1.0, retryCount("denied"));
+    }
+
+    @Test
+    void budgetIsRefilledByTraffic() {
+        var now = new AtomicLong();
+        var retryBudget = new RetryBudget(0.5, 0, 10, now::get);
+        while (retryBudget.tryWithdraw()) {
+            // drain the initial tokens
+        }
+
+        retryBudget.deposit();
+        assertFalse(retryBudget.tryWithdraw());
+        retryBudget.deposit();
+        assertTrue(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    void budgetIsRefilledOverTime() {
+        var now = new AtomicLong();
+        var retryBudget = new RetryBudget(0.2, 2, 10, now::get);
+        while (retryBudget.tryWithdraw()) {
+            // drain the initial tokens
+        }
+
+        now.addAndGet(Duration.ofMillis(500).toNanos());
+
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    void isRetryable() {
+        assertTrue(RetryUtil.isRetryable(new MoviesInfoServerException("MovieInfo Service Unavailable")));
+        assertTrue(RetryUtil.isRetryable(new TimeoutException()));
+        assertTrue(RetryUtil.isRetryable(new RuntimeException(new IOException("Connection reset by peer"))));
+        assertFalse(RetryUtil.isRetryable(new MoviesInfoClientException("Not Found", 404)));
+    }
+
+    @Test
+    void decodeErrorsAreNotRetried() {
+        // JsonProcessingException is an IOException too
+        var malformed = new JsonParseException(null, "Unexpected character ('<')");
+        assertFalse(RetryUtil.isRetryable(new DecodingException("JSON decoding error", malformed)));
+        assertFalse(RetryUtil.isRetryable(malformed));
+
+        StepVerifier.create(Mono.defer(() -> {
+                            attempts.incrementAndGet();
+                            return Mono.error(new DecodingException("JSON decoding error", malformed));
+                        })
+                        .retryWhen(RetryUtil.retrySpec("test", retryProperties, new RetryBudget(0.2, 0, 10), meterRegistry)))
+                .expectError(DecodingException.class)
+                .verify();
+        assertEquals(1, attempts.get());
+    }
+
+    private double retryCount(String outcome) {
+        return meterRegistry.get("movies.client.retries")
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+}